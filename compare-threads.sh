@@ -0,0 +1,24 @@
+#!/bin/bash
+# Runs the load-test scenarios against platform and virtual thread mode and prints throughput and latency of each.
+# Needs the database from .env-example, seeded once with sh ./gradlew seedLoadTestData.
+# Usage: ./compare-threads.sh [concurrency] [duration]
+set -e
+
+CONCURRENCY=${1:-400}
+DURATION=${2:-PT30S}
+
+sh ./gradlew bootJar
+
+for VIRTUAL in false true; do
+  VIRTUAL_THREADS=$VIRTUAL SECURITY_LOGIN_RATE_LIMIT_MAX_ATTEMPTS=100000000 \
+    java -jar build/libs/device-backend-0.0.1-SNAPSHOT.jar > /dev/null &
+  PID=$!
+  until curl -s -o /dev/null http://localhost:9000; do sleep 1; done
+
+  echo "== spring.threads.virtual.enabled=$VIRTUAL, concurrency $CONCURRENCY"
+  sh ./gradlew -q loadTest -Ploadtest.concurrency="$CONCURRENCY" -Ploadtest.duration="$DURATION" \
+    -Ploadtest.report="build/results/loadtest/report-virtual-$VIRTUAL.json" || true
+
+  kill $PID
+  wait $PID || true
+done
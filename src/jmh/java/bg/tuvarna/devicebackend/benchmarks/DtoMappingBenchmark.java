@@ -0,0 +1,43 @@
+package bg.tuvarna.devicebackend.benchmarks;
+
+import bg.tuvarna.devicebackend.models.dtos.DeviceVO;
+import bg.tuvarna.devicebackend.models.dtos.UserListing;
+import bg.tuvarna.devicebackend.models.dtos.UserVO;
+import bg.tuvarna.devicebackend.models.entities.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoMappingBenchmark {
+    @Param({"10", "1000"})
+    private int deviceCount;
+
+    private User user;
+
+    @Setup
+    public void setUp() {
+        user = Fixtures.userWithDevices(deviceCount);
+    }
+
+    @Benchmark
+    public UserVO userVO() {
+        return new UserVO(user);
+    }
+
+    @Benchmark
+    public List<DeviceVO> deviceVOs() {
+        return user.getDevices().stream().map(DeviceVO::new).toList();
+    }
+
+    @Benchmark
+    public UserListing userListing() {
+        return new UserListing(user);
+    }
+}
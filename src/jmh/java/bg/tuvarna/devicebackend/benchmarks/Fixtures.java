@@ -0,0 +1,99 @@
+package bg.tuvarna.devicebackend.benchmarks;
+
+import bg.tuvarna.devicebackend.models.entities.Device;
+import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.models.entities.Renovation;
+import bg.tuvarna.devicebackend.models.entities.User;
+import bg.tuvarna.devicebackend.models.enums.UserRole;
+import bg.tuvarna.devicebackend.repositories.PassportRepository;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+final class Fixtures {
+    static final int PREFIXES = 100;
+    static final int RANGE = 1000;
+
+    private Fixtures() {
+    }
+
+    static List<Passport> passports(int count) {
+        List<Passport> passports = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int from = (i / PREFIXES) * RANGE;
+            passports.add(Passport.builder()
+                    .id((long) i + 1)
+                    .name("Product " + i)
+                    .model("M-" + i)
+                    .serialPrefix(prefix(i % PREFIXES))
+                    .fromSerialNumber(from)
+                    .toSerialNumber(from + RANGE - 1)
+                    .warrantyMonths(24)
+                    .build());
+        }
+        return passports;
+    }
+
+    static String prefix(int n) {
+        return "P" + (char) ('A' + n / 26 % 26) + (char) ('A' + n % 26);
+    }
+
+    static String serialOf(Passport passport, int offset) {
+        return passport.getSerialPrefix() + (passport.getFromSerialNumber() + offset % RANGE);
+    }
+
+    static PassportRepository repositoryOf(List<Passport> passports) {
+        return (PassportRepository) Proxy.newProxyInstance(
+                PassportRepository.class.getClassLoader(),
+                new Class<?>[]{PassportRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAll" -> passports;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "PassportRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                }
+        );
+    }
+
+    static User userWithDevices(int deviceCount) {
+        User user = User.builder()
+                .id(1L)
+                .fullName("Benchmark User")
+                .email("benchmark@example.com")
+                .phone("0888000000")
+                .address("Varna")
+                .role(UserRole.USER)
+                .devices(new ArrayList<>())
+                .build();
+
+        List<Passport> passports = passports(10);
+        LocalDate purchaseDate = LocalDate.of(2024, 1, 1);
+
+        for (int i = 0; i < deviceCount; i++) {
+            Passport passport = passports.get(i % passports.size());
+
+            Device device = new Device();
+            device.setSerialNumber(serialOf(passport, i));
+            device.setPurchaseDate(purchaseDate);
+            device.setWarrantyExpirationDate(purchaseDate.plusMonths(passport.getWarrantyMonths()));
+            device.setPassport(passport);
+            device.setUser(user);
+
+            for (int r = 0; r < 2; r++) {
+                Renovation renovation = new Renovation();
+                renovation.setId((long) i * 2 + r);
+                renovation.setDescription("Renovation " + r);
+                renovation.setRenovationDate(purchaseDate.plusMonths(r + 1));
+                renovation.setDevice(device);
+                device.getRenovations().add(renovation);
+            }
+
+            user.getDevices().add(device);
+        }
+
+        return user;
+    }
+}
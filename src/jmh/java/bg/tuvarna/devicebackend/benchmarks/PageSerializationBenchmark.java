@@ -0,0 +1,44 @@
+package bg.tuvarna.devicebackend.benchmarks;
+
+import bg.tuvarna.devicebackend.models.dtos.DeviceListing;
+import bg.tuvarna.devicebackend.utils.CustomPage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of a device listing page, with the object mapper configured the way Spring MVC configures it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageSerializationBenchmark {
+    @Param({"10", "1000"})
+    private int deviceCount;
+
+    private ObjectMapper objectMapper;
+    private CustomPage<DeviceListing> page;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        page = new CustomPage<>();
+        page.setCurrentPage(1);
+        page.setTotalPages(1);
+        page.setSize(deviceCount);
+        page.setTotalItems((long) deviceCount);
+        page.setItems(Fixtures.userWithDevices(deviceCount).getDevices().stream().map(DeviceListing::new).toList());
+    }
+
+    @Benchmark
+    public byte[] devicePage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
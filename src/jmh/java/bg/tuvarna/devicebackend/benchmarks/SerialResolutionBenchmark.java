@@ -0,0 +1,67 @@
+package bg.tuvarna.devicebackend.benchmarks;
+
+import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.services.PassportSerialIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Serial number to passport resolution: the in-memory prefix index against the linear
+ * prefix/split/parse scan that {@code PassportService.findPassportBySerialId} falls back to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialResolutionBenchmark {
+    private static final int SERIALS = 1024;
+
+    @Param({"100", "10000"})
+    private int passportCount;
+
+    private PassportSerialIndex index;
+    private Map<String, List<Passport>> passportsByPrefix;
+    private String[] serials;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Passport> passports = Fixtures.passports(passportCount);
+
+        index = new PassportSerialIndex(Fixtures.repositoryOf(passports));
+        passportsByPrefix = passports.stream().collect(Collectors.groupingBy(Passport::getSerialPrefix));
+        serials = new String[SERIALS];
+        for (int i = 0; i < SERIALS; i++) {
+            serials[i] = Fixtures.serialOf(passports.get((i * 7919) % passports.size()), i);
+        }
+
+        index.find(serials[0]);
+    }
+
+    @Benchmark
+    public Passport indexLookup() {
+        return index.find(nextSerial());
+    }
+
+    @Benchmark
+    public Passport prefixScan() {
+        String serial = nextSerial();
+        for (Passport passport : passportsByPrefix.get(serial.substring(0, 3))) {
+            if (PassportSerialIndex.covers(passport, serial)) {
+                return passport;
+            }
+        }
+        return null;
+    }
+
+    private String nextSerial() {
+        next = (next + 1) & (SERIALS - 1);
+        return serials[next];
+    }
+}
@@ -0,0 +1,214 @@
+package bg.tuvarna.devicebackend.loadtest;
+
+import bg.tuvarna.devicebackend.models.entities.Device;
+import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.models.entities.User;
+import bg.tuvarna.devicebackend.models.enums.UserRole;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeds a PostgreSQL database with the {@link Dataset} configured through {@code loadtest.*} system properties.
+ * The schema must already exist, so start the service against the database once before seeding.
+ * Rows are written with batched inserts; existing load-test rows are removed first, so seeding is repeatable.
+ */
+public class DataGenerator {
+    private static final int BATCH_SIZE = 5_000;
+    private static final LocalDate FIRST_PURCHASE = LocalDate.of(2022, 1, 1);
+
+    private final Dataset dataset;
+    private final Connection connection;
+    private final Random random;
+    private final List<Passport> passports = new ArrayList<>();
+    private final List<User> users = new ArrayList<>();
+
+    public DataGenerator(Dataset dataset, Connection connection) {
+        this.dataset = dataset;
+        this.connection = connection;
+        this.random = new Random(dataset.seed());
+    }
+
+    public static void main(String[] args) throws SQLException {
+        Dataset dataset = Dataset.fromSystemProperties();
+        String url = System.getProperty("loadtest.jdbc-url", "jdbc:postgresql://localhost:5555/device_backendDB?reWriteBatchedInserts=true");
+
+        try (Connection connection = DriverManager.getConnection(
+                url,
+                System.getProperty("loadtest.jdbc-user", "postgres"),
+                System.getProperty("loadtest.jdbc-password", "1234")
+        )) {
+            connection.setAutoCommit(false);
+            new DataGenerator(dataset, connection).seed();
+        }
+    }
+
+    public void seed() throws SQLException {
+        long started = System.nanoTime();
+
+        clear();
+        seedPassports();
+        seedUsers();
+        seedDevices();
+        seedRenovations();
+        resetIdentity("passports");
+        resetIdentity("users");
+        resetIdentity("renovations");
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("analyze");
+        }
+        connection.commit();
+
+        System.out.printf("Seeded %s in %d s%n", dataset, (System.nanoTime() - started) / 1_000_000_000);
+    }
+
+    private void clear() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("delete from renovations where device_serial_number like 'LT%'");
+            statement.executeUpdate("delete from devices where serial_number like 'LT%'");
+            statement.executeUpdate("delete from users where email like 'loadtest-%'");
+            statement.executeUpdate("delete from passports where serial_prefix like 'LT%'");
+        }
+        connection.commit();
+    }
+
+    private void seedPassports() throws SQLException {
+        long firstId = nextId("passports");
+        String sql = "insert into passports (id, name, model, serial_prefix, from_serial_number, to_serial_number, warranty_months) " +
+                "values (?, ?, ?, ?, ?, ?, ?)";
+
+        try (PreparedStatement insert = connection.prepareStatement(sql)) {
+            for (int i = 0; i < dataset.passports(); i++) {
+                Passport passport = Passport.builder()
+                        .id(firstId + i)
+                        .name("Product " + i)
+                        .model("LT-" + (1000 + i))
+                        .serialPrefix(dataset.prefix(i))
+                        .fromSerialNumber(0)
+                        .toSerialNumber(dataset.devicesPerPassport() - 1)
+                        .warrantyMonths(12 + 12 * random.nextInt(3))
+                        .build();
+                passports.add(passport);
+
+                insert.setLong(1, passport.getId());
+                insert.setString(2, passport.getName());
+                insert.setString(3, passport.getModel());
+                insert.setString(4, passport.getSerialPrefix());
+                insert.setInt(5, passport.getFromSerialNumber());
+                insert.setInt(6, passport.getToSerialNumber());
+                insert.setInt(7, passport.getWarrantyMonths());
+                addBatch(insert, i);
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+    }
+
+    private void seedUsers() throws SQLException {
+        long firstId = nextId("users");
+        String password = new BCryptPasswordEncoder(10).encode(Dataset.PASSWORD);
+        String sql = "insert into users (id, full_name, address, phone, email, password, role, search_document) " +
+                "values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+        try (PreparedStatement insert = connection.prepareStatement(sql)) {
+            for (int i = 0; i < dataset.users(); i++) {
+                User user = User.builder()
+                        .id(firstId + i)
+                        .fullName(pick(Dataset.FIRST_NAMES) + " " + pick(Dataset.LAST_NAMES))
+                        .address(pick(Dataset.CITIES) + ", " + (1 + random.nextInt(200)) + " Main st.")
+                        .phone(dataset.phone(i))
+                        .email(dataset.email(i))
+                        .role(UserRole.USER)
+                        .build();
+                user.refreshSearchDocument();
+                users.add(user);
+
+                insert.setLong(1, user.getId());
+                insert.setString(2, user.getFullName());
+                insert.setString(3, user.getAddress());
+                insert.setString(4, user.getPhone());
+                insert.setString(5, user.getEmail());
+                insert.setString(6, password);
+                insert.setString(7, user.getRole().name());
+                insert.setString(8, user.getSearchDocument());
+                addBatch(insert, i);
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+    }
+
+    private void seedDevices() throws SQLException {
+        String sql = "insert into devices (serial_number, purchase_date, warranty_expiration_date, user_id, passport_id, search_document) " +
+                "values (?, ?, ?, ?, ?, ?)";
+
+        try (PreparedStatement insert = connection.prepareStatement(sql)) {
+            for (int i = 0; i < dataset.devices(); i++) {
+                String serial = dataset.serial(i);
+                Passport passport = passports.get(i % dataset.passports());
+                User owner = random.nextInt(10) < 8 ? users.get(random.nextInt(users.size())) : null;
+                LocalDate purchaseDate = FIRST_PURCHASE.plusDays(random.nextInt(3 * 365));
+                LocalDate warrantyDate = purchaseDate.plusMonths(passport.getWarrantyMonths() + (owner != null ? 12 : 0));
+
+                insert.setString(1, serial);
+                insert.setDate(2, Date.valueOf(purchaseDate));
+                insert.setDate(3, Date.valueOf(warrantyDate));
+                if (owner != null) {
+                    insert.setLong(4, owner.getId());
+                } else {
+                    insert.setNull(4, Types.BIGINT);
+                }
+                insert.setLong(5, passport.getId());
+                insert.setString(6, Device.searchDocumentOf(serial, owner, passport));
+                addBatch(insert, i);
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+    }
+
+    private void seedRenovations() throws SQLException {
+        String sql = "insert into renovations (description, renovation_date, device_serial_number) values (?, ?, ?)";
+
+        try (PreparedStatement insert = connection.prepareStatement(sql)) {
+            for (int i = 0; i < dataset.renovations(); i++) {
+                insert.setString(1, "Renovation " + i);
+                insert.setDate(2, Date.valueOf(FIRST_PURCHASE.plusDays(random.nextInt(4 * 365))));
+                insert.setString(3, dataset.serial(random.nextInt(dataset.devices())));
+                addBatch(insert, i);
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+    }
+
+    private long nextId(String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select coalesce(max(id), 0) + 1 from " + table)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private void resetIdentity(String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("select setval(pg_get_serial_sequence('" + table + "', 'id'), (select coalesce(max(id), 1) from " + table + "))");
+        }
+    }
+
+    private void addBatch(PreparedStatement insert, int row) throws SQLException {
+        insert.addBatch();
+        if ((row + 1) % BATCH_SIZE == 0) {
+            insert.executeBatch();
+        }
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
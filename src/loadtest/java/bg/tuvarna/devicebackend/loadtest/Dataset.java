@@ -0,0 +1,52 @@
+package bg.tuvarna.devicebackend.loadtest;
+
+/**
+ * Shape of the seeded load-test dataset. Serial numbers, e-mails and phones are derived from row indexes,
+ * so the load test can address seeded rows without reading them back from the database.
+ */
+public record Dataset(int passports, int users, int devices, int renovations, long seed) {
+    public static final String PASSWORD = "Loadtest1!";
+    public static final String[] FIRST_NAMES = {
+            "Ivan", "Maria", "Georgi", "Elena", "Dimitar", "Petya", "Nikolay", "Desislava", "Todor", "Kalina"
+    };
+    public static final String[] LAST_NAMES = {
+            "Ivanov", "Petrova", "Georgiev", "Dimitrova", "Nikolov", "Todorova", "Stoyanov", "Hristova", "Kolev", "Angelova"
+    };
+    public static final String[] CITIES = {"Varna", "Sofia", "Plovdiv", "Burgas", "Ruse", "Shumen"};
+
+    public static Dataset fromSystemProperties() {
+        return new Dataset(
+                Integer.getInteger("loadtest.passports", 1_000),
+                Integer.getInteger("loadtest.users", 100_000),
+                Integer.getInteger("loadtest.devices", 1_000_000),
+                Integer.getInteger("loadtest.renovations", 200_000),
+                Long.getLong("loadtest.seed", 42L)
+        );
+    }
+
+    public String prefix(int passport) {
+        StringBuilder prefix = new StringBuilder("LT");
+        int n = passport;
+        for (int i = 0; i < 3; i++) {
+            prefix.append((char) ('A' + n % 26));
+            n /= 26;
+        }
+        return prefix.toString();
+    }
+
+    public int devicesPerPassport() {
+        return (devices + passports - 1) / passports;
+    }
+
+    public String serial(int device) {
+        return prefix(device % passports) + device / passports;
+    }
+
+    public String email(int user) {
+        return "loadtest-" + user + "@example.com";
+    }
+
+    public String phone(int user) {
+        return String.format("09%08d", user);
+    }
+}
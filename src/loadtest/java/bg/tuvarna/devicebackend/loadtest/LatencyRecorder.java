@@ -0,0 +1,60 @@
+package bg.tuvarna.devicebackend.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Collects request latencies of one worker; recorders are merged once the scenario has finished.
+ */
+final class LatencyRecorder {
+    private long[] latencies = new long[1024];
+    private int count;
+    private int errors;
+    private int rateLimited;
+
+    void record(long nanos, boolean success) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+        if (!success) {
+            errors++;
+        }
+    }
+
+    void recordRateLimited() {
+        rateLimited++;
+    }
+
+    static LatencyRecorder merge(Iterable<LatencyRecorder> recorders) {
+        LatencyRecorder merged = new LatencyRecorder();
+        for (LatencyRecorder recorder : recorders) {
+            for (int i = 0; i < recorder.count; i++) {
+                merged.record(recorder.latencies[i], true);
+            }
+            merged.errors += recorder.errors;
+            merged.rateLimited += recorder.rateLimited;
+        }
+        Arrays.sort(merged.latencies, 0, merged.count);
+        return merged;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int errors() {
+        return errors;
+    }
+
+    int rateLimited() {
+        return rateLimited;
+    }
+
+    double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return latencies[Math.max(index, 0)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,289 @@
+package bg.tuvarna.devicebackend.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Drives the scenarios below against a running service seeded by {@link DataGenerator}. Each scenario runs for
+ * {@code loadtest.duration} with {@code loadtest.concurrency} virtual-thread workers. The p50/p99 latency,
+ * throughput and error rate of every scenario are printed, written to {@code loadtest.report}, and checked
+ * against {@code thresholds.properties}; the process exits with status 1 when a threshold is violated.
+ * Responses rejected by the login rate limit (429) are counted apart and left out of latency, throughput and error rate:
+ * with the default {@code security.login.rate-limit.max-attempts} the login scenario is almost entirely rate limited,
+ * so start the service with {@code SECURITY_LOGIN_RATE_LIMIT_MAX_ATTEMPTS} raised (as compare-threads.sh does) to measure it.
+ */
+public class LoadTest {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Dataset dataset;
+    private final String baseUrl;
+    private final HttpClient client;
+    private final AtomicLong registrations = new AtomicLong();
+    private final long runId = System.currentTimeMillis() % 100_000;
+    private String adminToken;
+
+    public LoadTest(Dataset dataset, String baseUrl) {
+        this.dataset = dataset;
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTest loadTest = new LoadTest(
+                Dataset.fromSystemProperties(),
+                System.getProperty("loadtest.base-url", "http://localhost:9000")
+        );
+
+        List<Result> results = loadTest.run(
+                Integer.getInteger("loadtest.concurrency", 64),
+                Duration.parse(System.getProperty("loadtest.duration", "PT30S")),
+                Set.of(System.getProperty("loadtest.scenarios", "").split(","))
+        );
+
+        Path report = Path.of(System.getProperty("loadtest.report", "build/results/loadtest/report.json"));
+        Files.createDirectories(report.getParent());
+        objectMapper.writeValue(report.toFile(), results);
+
+        List<String> violations = checkThresholds(results, loadThresholds());
+        violations.forEach(v -> System.out.println("THRESHOLD VIOLATED: " + v));
+        System.exit(violations.isEmpty() ? 0 : 1);
+    }
+
+    public List<Result> run(int concurrency, Duration duration, Set<String> only) throws Exception {
+        adminToken = login(
+                System.getProperty("loadtest.admin-username", "admin"),
+                System.getProperty("loadtest.admin-password", "admin")
+        );
+
+        Map<String, Function<ThreadLocalRandom, HttpRequest>> scenarios = new LinkedHashMap<>();
+        scenarios.put("serial-lookup", this::serialLookup);
+        scenarios.put("device-exists", this::deviceExists);
+        scenarios.put("admin-device-search", this::adminDeviceSearch);
+        scenarios.put("admin-user-search", this::adminUserSearch);
+        scenarios.put("login", this::login);
+        scenarios.put("registration", this::registration);
+
+        System.out.printf("%-22s %10s %8s %8s %10s %10s %12s%n",
+                "scenario", "requests", "errors", "limited", "p50 ms", "p99 ms", "req/s");
+
+        List<Result> results = new ArrayList<>();
+        for (Map.Entry<String, Function<ThreadLocalRandom, HttpRequest>> scenario : scenarios.entrySet()) {
+            if (!only.contains("") && !only.contains(scenario.getKey())) {
+                continue;
+            }
+
+            Result result = runScenario(scenario.getKey(), scenario.getValue(), concurrency, duration);
+            System.out.printf("%-22s %10d %8d %8d %10.2f %10.2f %12.1f%n",
+                    result.scenario(), result.requests(), result.errors(), result.rateLimited(),
+                    result.p50Millis(), result.p99Millis(), result.throughput());
+            if (result.rateLimited() > 0) {
+                System.out.printf("WARNING: %d %s requests were rate limited and left out of the results, " +
+                        "raise SECURITY_LOGIN_RATE_LIMIT_MAX_ATTEMPTS on the service%n", result.rateLimited(), result.scenario());
+            }
+            results.add(result);
+        }
+
+        return results;
+    }
+
+    private Result runScenario(String name, Function<ThreadLocalRandom, HttpRequest> requests, int concurrency, Duration duration)
+            throws InterruptedException {
+        List<LatencyRecorder> recorders = new ArrayList<>();
+        long started = System.nanoTime();
+        long deadline = started + duration.toNanos();
+
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                LatencyRecorder recorder = new LatencyRecorder();
+                recorders.add(recorder);
+                workers.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        HttpRequest request = requests.apply(ThreadLocalRandom.current());
+                        long sent = System.nanoTime();
+                        int status;
+                        try {
+                            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        } catch (IOException e) {
+                            status = 0;
+                        }
+                        if (status == TOO_MANY_REQUESTS) {
+                            recorder.recordRateLimited();
+                        } else {
+                            recorder.record(System.nanoTime() - sent, status >= 200 && status < 300);
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+
+        double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+        LatencyRecorder merged = LatencyRecorder.merge(recorders);
+
+        return new Result(
+                name,
+                merged.count(),
+                merged.errors(),
+                merged.rateLimited(),
+                merged.percentileMillis(50),
+                merged.percentileMillis(99),
+                merged.count() / seconds
+        );
+    }
+
+    private HttpRequest serialLookup(ThreadLocalRandom random) {
+        return get("/api/v1/passports/getBySerialId/" + dataset.serial(random.nextInt(dataset.devices()))).build();
+    }
+
+    private HttpRequest deviceExists(ThreadLocalRandom random) {
+        return get("/api/v1/devices/exists/" + dataset.serial(random.nextInt(dataset.devices()))).build();
+    }
+
+    private HttpRequest adminDeviceSearch(ThreadLocalRandom random) {
+        String searchBy = random.nextBoolean()
+                ? Dataset.LAST_NAMES[random.nextInt(Dataset.LAST_NAMES.length)]
+                : dataset.serial(random.nextInt(dataset.devices()));
+        return get("/api/v1/devices?page=1&size=20&searchBy=" + encode(searchBy))
+                .header("Authorization", "Bearer " + adminToken)
+                .build();
+    }
+
+    private HttpRequest adminUserSearch(ThreadLocalRandom random) {
+        String searchBy = random.nextBoolean()
+                ? Dataset.FIRST_NAMES[random.nextInt(Dataset.FIRST_NAMES.length)]
+                : dataset.email(random.nextInt(dataset.users()));
+        return get("/api/v1/users?page=1&size=20&searchBy=" + encode(searchBy))
+                .header("Authorization", "Bearer " + adminToken)
+                .build();
+    }
+
+    private HttpRequest login(ThreadLocalRandom random) {
+        return post("/api/v1/users/login", Map.of(
+                "username", dataset.email(random.nextInt(dataset.users())),
+                "password", Dataset.PASSWORD
+        ));
+    }
+
+    private HttpRequest registration(ThreadLocalRandom random) {
+        long n = registrations.incrementAndGet();
+        return post("/api/v1/users/registration", Map.of(
+                "fullName", "Registered " + n,
+                "password", Dataset.PASSWORD,
+                "email", "loadtest-run" + runId + "-" + n + "@example.com",
+                "phone", String.format("08%03d%05d", runId % 1000, n % 100_000),
+                "address", "Varna"
+        ));
+    }
+
+    private String login(String username, String password) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(
+                post("/api/v1/users/login", Map.of("username", username, "password", password)),
+                HttpResponse.BodyHandlers.ofString()
+        );
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Admin login failed with status " + response.statusCode());
+        }
+
+        JsonNode body = objectMapper.readTree(response.body());
+        return body.get("token").asText();
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30)).GET();
+    }
+
+    private HttpRequest post(String path, Map<String, String> body) {
+        try {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static Properties loadThresholds() throws IOException {
+        Properties thresholds = new Properties();
+        String file = System.getProperty("loadtest.thresholds");
+
+        try (InputStream in = file != null
+                ? Files.newInputStream(Path.of(file))
+                : LoadTest.class.getResourceAsStream("/thresholds.properties")) {
+            thresholds.load(in);
+        }
+
+        return thresholds;
+    }
+
+    static List<String> checkThresholds(List<Result> results, Properties thresholds) {
+        List<String> violations = new ArrayList<>();
+
+        for (Result result : results) {
+            double maxP50 = threshold(thresholds, result.scenario(), "p50-ms", Double.MAX_VALUE);
+            double maxP99 = threshold(thresholds, result.scenario(), "p99-ms", Double.MAX_VALUE);
+            double minThroughput = threshold(thresholds, result.scenario(), "min-throughput", 0);
+            double maxErrorRate = threshold(thresholds, result.scenario(), "max-error-rate", 1);
+            double errorRate = result.requests() == 0 ? 1 : (double) result.errors() / result.requests();
+
+            if (result.p50Millis() > maxP50) {
+                violations.add(String.format("%s p50 %.2f ms > %.2f ms", result.scenario(), result.p50Millis(), maxP50));
+            }
+            if (result.p99Millis() > maxP99) {
+                violations.add(String.format("%s p99 %.2f ms > %.2f ms", result.scenario(), result.p99Millis(), maxP99));
+            }
+            if (result.throughput() < minThroughput) {
+                violations.add(String.format("%s throughput %.1f req/s < %.1f req/s", result.scenario(), result.throughput(), minThroughput));
+            }
+            if (errorRate > maxErrorRate) {
+                violations.add(String.format("%s error rate %.4f > %.4f", result.scenario(), errorRate, maxErrorRate));
+            }
+        }
+
+        return violations;
+    }
+
+    private static double threshold(Properties thresholds, String scenario, String metric, double fallback) {
+        String value = thresholds.getProperty(scenario + "." + metric, thresholds.getProperty("default." + metric));
+        return value != null ? Double.parseDouble(value) : fallback;
+    }
+
+    public record Result(
+            String scenario,
+            int requests,
+            int errors,
+            int rateLimited,
+            double p50Millis,
+            double p99Millis,
+            double throughput
+    ) {
+    }
+}
@@ -35,13 +35,14 @@ public class AuthFilter {
     private final AuthenticationManager manager;
     private final UserService userService;
     private final JwtService jwtService;
+    private final LoginRateLimiter loginRateLimiter;
     @Autowired
     private ObjectMapper objectMapper;
 
     @Bean(name = "CustomAuthFilter")
     public AuthenticationFilter authFilter() {
         AuthenticationConverter authenticationConverter = this::authConverter;
-        AuthenticationFilter filter = new AuthenticationFilter(manager, authenticationConverter);
+        AuthenticationFilter filter = new AuthenticationFilter(this::authenticate, authenticationConverter);
         filter.setRequestMatcher(AuthFilter::matches);
         filter.setSuccessHandler(this::successHandler);
         filter.setFailureHandler(this::failureHandler);
@@ -51,8 +52,8 @@ public class AuthFilter {
     private void successHandler(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, Authentication authentication) {
         if (authentication.isAuthenticated()) {
             User principal = (User) authentication.getPrincipal();
-            String token = jwtService.generateToken(userService.getUserById(principal.getId()));
-            UserVO userVO = new UserVO(principal);
+            String token = jwtService.generateToken(principal);
+            UserVO userVO = userService.getUserVO(principal.getId());
             AuthResponseDTO responseDTO = new AuthResponseDTO(token, userVO);
             httpServletResponse.setStatus(HttpServletResponse.SC_OK);
             httpServletResponse.setContentType("application/json");
@@ -65,12 +66,27 @@ public class AuthFilter {
         }
     }
 
+    private Authentication authenticate(Authentication authentication) {
+        try {
+            return manager.authenticate(authentication);
+        } catch (CustomException e) {
+            throw new AuthenticationServiceException(e.getMessage(), e);
+        }
+    }
+
     private void failureHandler(HttpServletRequest request,
                                 HttpServletResponse response,
                                 AuthenticationException e) throws IOException {
-        response.setStatus(HttpStatus.UNAUTHORIZED.value());
         response.setContentType("application/json");
 
+        if (e.getCause() instanceof CustomException cause && cause.getErrorCode() == ErrorCode.TooManyRequests) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            objectMapper.writeValue(response.getWriter(), new ErrorResponse(cause));
+            return;
+        }
+
+        response.setStatus(HttpStatus.UNAUTHORIZED.value());
+
         ErrorResponse body = new ErrorResponse(
                 new CustomException("Wrong credentials!", ErrorCode.WrongCredentials)
         );
@@ -83,6 +99,13 @@ public class AuthFilter {
     }
 
     private Authentication authConverter(HttpServletRequest request) {
+        if (!loginRateLimiter.tryAcquire(request.getRemoteAddr())) {
+            throw new AuthenticationServiceException(
+                    "Too many login attempts",
+                    new CustomException("Too many login attempts, try again later", ErrorCode.TooManyRequests)
+            );
+        }
+
         try {
             ContentCachingRequestWrapper requestWrapper = new ContentCachingRequestWrapper(request);
             Gson gson = new Gson();
@@ -0,0 +1,34 @@
+package bg.tuvarna.devicebackend.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Bounded Caffeine caches behind the Spring cache abstraction. Every cache records statistics,
+ * which actuator exports as the {@code cache.gets}, {@code cache.puts}, {@code cache.evictions} and {@code cache.size} metrics.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String PRINCIPALS = "principals";
+    public static final String PASSPORTS = "passports";
+    public static final String PASSPORT_SERIALS = "passportSerials";
+
+    @Bean
+    public CacheManager cacheManager(
+            @Value("${caches.principals.spec}") String principalsSpec,
+            @Value("${caches.passports.spec}") String passportsSpec,
+            @Value("${caches.passport-serials.spec}") String passportSerialsSpec
+    ) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.registerCustomCache(PRINCIPALS, Caffeine.from(principalsSpec).recordStats().build());
+        cacheManager.registerCustomCache(PASSPORTS, Caffeine.from(passportsSpec).recordStats().build());
+        cacheManager.registerCustomCache(PASSPORT_SERIALS, Caffeine.from(passportSerialsSpec).recordStats().build());
+        return cacheManager;
+    }
+}
@@ -0,0 +1,24 @@
+package bg.tuvarna.devicebackend.config;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+
+/**
+ * Single resources get strong ETags from their {@code @Version} columns in the controllers. Listings span many rows,
+ * so they get a weak ETag hashed from the rendered body instead: a matching poll still answers 304 without sending it.
+ * The tag is weak so the response stays eligible for compression, which Tomcat skips for strong ETags.
+ */
+@Configuration
+public class HttpCachingConfig {
+    @Bean
+    public FilterRegistrationBean<ShallowEtagHeaderFilter> listingEtagFilter() {
+        ShallowEtagHeaderFilter filter = new ShallowEtagHeaderFilter();
+        filter.setWriteWeakETag(true);
+
+        FilterRegistrationBean<ShallowEtagHeaderFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/api/v1/devices", "/api/v1/passports", "/api/v1/users");
+        return registration;
+    }
+}
@@ -3,24 +3,31 @@ package bg.tuvarna.devicebackend.config;
 import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
 import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
 import bg.tuvarna.devicebackend.models.entities.User;
+import bg.tuvarna.devicebackend.models.enums.UserRole;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.function.Function;
 
 @Service
 public class JwtService {
+    public static final String ROLE_CLAIM = "role";
+    public static final String CREDENTIALS_CLAIM = "cred";
+
     private static final Logger logger = LoggerFactory.getLogger(JwtService.class);
     private final SecretKey key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(key).build();
 
     public String extractId(String token) {
         return extractClaim(token, Claims::getSubject);
@@ -31,8 +38,13 @@ public class JwtService {
         return claimsResolver.apply(claims);
     }
 
+    @Timed("jwt.sign")
     public String generateToken(User user) {
-        return generateToken(new HashMap<>(), user);
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(ROLE_CLAIM, user.getRole().name());
+        claims.put(CREDENTIALS_CLAIM, credentialsFingerprint(user.getPassword()));
+
+        return generateToken(claims, user);
     }
 
     public String generateToken(Map<String, Object> extraClaims, User user) {
@@ -46,34 +58,58 @@ public class JwtService {
                 .compact();
     }
 
+    /**
+     * Verifies the token once and returns its claims, or null when it has expired.
+     */
+    @Timed("jwt.parse")
+    public Claims parseToken(String token) {
+        try {
+            return extractAllClaims(token);
+        } catch (ExpiredJwtException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds the principal from the id and role claims only, without loading the user.
+     */
+    public User toPrincipal(Claims claims) {
+        String role = claims.get(ROLE_CLAIM, String.class);
+        if (claims.getSubject() == null || role == null) {
+            throw new CustomException("Not valid JWT token", ErrorCode.Failed);
+        }
+
+        return User.builder()
+                .id(Long.valueOf(claims.getSubject()))
+                .role(UserRole.valueOf(role))
+                .build();
+    }
+
     public boolean isTokenValid(String token, User user) {
         final long id = Long.parseLong(extractId(token));
         return (id == user.getId()) && !isTokenExpired(token);
     }
 
     public boolean isTokenExpired(String token) {
-        return extractExpiration(token) == null;
+        return parseToken(token) == null;
     }
 
-    private Date extractExpiration(String token) {
+    public static String credentialsFingerprint(String passwordHash) {
         try {
-            return extractClaim(token, Claims::getExpiration);
-        } catch (ExpiredJwtException e) {
-            return null;
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(Objects.toString(passwordHash, "").getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 12));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
 
     private Claims extractAllClaims(String token) {
         try {
-            return Jwts
-                    .parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            return parser.parseClaimsJws(token).getBody();
         } catch (MalformedJwtException e) {
             logger.error("Not valid JWT token");
             throw new CustomException("Not valid JWT token", ErrorCode.Failed);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package bg.tuvarna.devicebackend.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-window limit of login attempts per client address.
+ */
+@Component
+public class LoginRateLimiter {
+    private final int maxAttempts;
+    private final Cache<String, AtomicInteger> attempts;
+
+    public LoginRateLimiter(
+            @Value("${security.login.rate-limit.max-attempts:20}") int maxAttempts,
+            @Value("${security.login.rate-limit.window:1m}") Duration window
+    ) {
+        this.maxAttempts = maxAttempts;
+        this.attempts = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(window)
+                .build();
+    }
+
+    public boolean tryAcquire(String clientAddress) {
+        return attempts.get(clientAddress, address -> new AtomicInteger()).incrementAndGet() <= maxAttempts;
+    }
+}
@@ -0,0 +1,52 @@
+package bg.tuvarna.devicebackend.config;
+
+import bg.tuvarna.devicebackend.utils.QueryStats;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps the data source in a datasource-proxy so every statement, whether issued by Hibernate or
+ * {@link org.springframework.jdbc.core.JdbcTemplate}, is counted and timed in the open {@link QueryStats} scopes.
+ */
+@Configuration
+public class QueryStatsConfig {
+    @Bean
+    public static BeanPostProcessor queryStatsDataSourceProxy() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)) {
+                    return ProxyDataSourceBuilder.create(dataSource)
+                            .name(beanName)
+                            .listener(new QueryStatsListener())
+                            .build();
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static final class QueryStatsListener implements QueryExecutionListener {
+        @Override
+        public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            long elapsed = TimeUnit.MILLISECONDS.toNanos(execInfo.getElapsedTime()) / Math.max(1, queryInfoList.size());
+            for (QueryInfo query : queryInfoList) {
+                QueryStats.record(query.getQuery(), elapsed);
+            }
+        }
+    }
+}
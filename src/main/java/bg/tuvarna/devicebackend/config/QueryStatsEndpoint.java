@@ -0,0 +1,44 @@
+package bg.tuvarna.devicebackend.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Actuator endpoint listing the most recent requests flagged by {@link QueryStatsFilter}, newest first.
+ */
+@Component
+@Endpoint(id = "querystats")
+public class QueryStatsEndpoint {
+    private static final int CAPACITY = 100;
+
+    private final Deque<FlaggedRequest> recent = new ArrayDeque<>(CAPACITY);
+
+    @ReadOperation
+    public synchronized List<FlaggedRequest> flaggedRequests() {
+        return List.copyOf(recent);
+    }
+
+    synchronized void add(FlaggedRequest request) {
+        if (recent.size() == CAPACITY) {
+            recent.removeLast();
+        }
+        recent.addFirst(request);
+    }
+
+    public record FlaggedRequest(
+            Instant at,
+            String method,
+            String uri,
+            int statements,
+            long dbTimeMillis,
+            String mostRepeatedStatement,
+            int mostRepeatedCount
+    ) {
+    }
+}
@@ -0,0 +1,101 @@
+package bg.tuvarna.devicebackend.config;
+
+import bg.tuvarna.devicebackend.utils.QueryStats;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Measures the SQL statements and database time of every HTTP request. Requests that execute more than
+ * {@code db.query-stats.max-statements} statements, spend more than {@code db.query-stats.max-time} in the
+ * database or repeat one statement more than {@code db.query-stats.max-repeated} times are logged,
+ * counted and listed by {@link QueryStatsEndpoint}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class QueryStatsFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(QueryStatsFilter.class);
+
+    private final MeterRegistry meterRegistry;
+    private final QueryStatsEndpoint queryStatsEndpoint;
+
+    @Value("${db.query-stats.max-statements:25}")
+    private int maxStatements;
+
+    @Value("${db.query-stats.max-time:250ms}")
+    private Duration maxTime;
+
+    @Value("${db.query-stats.max-repeated:10}")
+    private int maxRepeated;
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain
+    ) throws ServletException, IOException {
+        QueryStats stats = QueryStats.open();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            stats.close();
+            report(request, stats);
+        }
+    }
+
+    private void report(HttpServletRequest request, QueryStats stats) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        String method = request.getMethod();
+
+        DistributionSummary.builder("http.server.requests.db.statements")
+                .tags("method", method, "uri", uri)
+                .register(meterRegistry)
+                .record(stats.statements());
+        Timer.builder("http.server.requests.db.time")
+                .tags("method", method, "uri", uri)
+                .register(meterRegistry)
+                .record(stats.dbTime());
+
+        Map.Entry<String, Integer> repeated = stats.mostRepeated();
+        int repeatedCount = repeated != null ? repeated.getValue() : 0;
+        if (stats.statements() <= maxStatements && stats.dbTime().compareTo(maxTime) <= 0 && repeatedCount <= maxRepeated) {
+            return;
+        }
+
+        meterRegistry.counter("http.server.requests.db.flagged", "method", method, "uri", uri).increment();
+        logger.warn(
+                "{} {} executed {} SQL statements in {} ms; most repeated ({}x): {}",
+                method, request.getRequestURI(), stats.statements(), stats.dbTime().toMillis(),
+                repeatedCount, repeated != null ? repeated.getKey() : "-"
+        );
+        queryStatsEndpoint.add(new QueryStatsEndpoint.FlaggedRequest(
+                Instant.now(),
+                method,
+                uri,
+                stats.statements(),
+                stats.dbTime().toMillis(),
+                repeated != null ? repeated.getKey() : null,
+                repeatedCount
+        ));
+    }
+}
@@ -0,0 +1,123 @@
+package bg.tuvarna.devicebackend.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the statements of {@code @Transactional(readOnly = true)} methods to the replica and everything else to the primary.
+ * The physical connection is fetched lazily, on the first statement, because the read-only flag of the transaction
+ * is only known after the transaction manager has already asked for a connection.
+ * Reads fall back to the primary while the replica lags more than {@code maxLag}, cannot be reached,
+ * or the current user has just written (see {@link ReplicaStickiness}).
+ */
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+    private static final String REPLICA_LAG = "select case " +
+            "when not pg_is_in_recovery() or pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 " +
+            "else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0) end";
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ReplicaStickiness stickiness;
+    private final Duration maxLag;
+    private final ScheduledExecutorService lagCheck;
+    private volatile double lagSeconds;
+    private volatile boolean replicaUsable = true;
+
+    public ReplicaRoutingDataSource(
+            DataSource primary,
+            DataSource replica,
+            ReplicaStickiness stickiness,
+            Duration maxLag,
+            Duration lagCheckInterval,
+            MeterRegistry meterRegistry
+    ) {
+        this.primary = primary;
+        this.replica = replica;
+        this.stickiness = stickiness;
+        this.maxLag = maxLag;
+
+        AbstractRoutingDataSource router = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                return useReplica() ? REPLICA : PRIMARY;
+            }
+        };
+        router.setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        router.setDefaultTargetDataSource(primary);
+        router.afterPropertiesSet();
+        setTargetDataSource(router);
+
+        this.lagCheck = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lagCheck.scheduleWithFixedDelay(
+                this::checkLag, 0, lagCheckInterval.toMillis(), TimeUnit.MILLISECONDS
+        );
+
+        meterRegistry.gauge("datasource.replica.lag", this, r -> r.lagSeconds);
+        meterRegistry.gauge("datasource.replica.usable", this, r -> r.replicaUsable ? 1 : 0);
+    }
+
+    private boolean useReplica() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && replicaUsable
+                && !stickiness.isSticky();
+    }
+
+    private void checkLag() {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(REPLICA_LAG)) {
+            resultSet.next();
+            lagSeconds = resultSet.getDouble(1);
+            setReplicaUsable(lagSeconds * 1000 <= maxLag.toMillis(), "lagging " + lagSeconds + "s");
+        } catch (SQLException | RuntimeException e) {
+            lagSeconds = Double.NaN;
+            setReplicaUsable(false, e.getMessage());
+        }
+    }
+
+    private void setReplicaUsable(boolean usable, String reason) {
+        if (replicaUsable && !usable) {
+            logger.warn("Routing reads to the primary, replica is {}", reason);
+        } else if (!replicaUsable && usable) {
+            logger.info("Routing reads to the replica again");
+        }
+        replicaUsable = usable;
+    }
+
+    @Override
+    public void close() {
+        lagCheck.shutdownNow();
+        for (DataSource dataSource : new DataSource[]{replica, primary}) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    logger.warn("Could not close data source", e);
+                }
+            }
+        }
+    }
+}
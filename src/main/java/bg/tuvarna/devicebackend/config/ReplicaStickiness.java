@@ -0,0 +1,41 @@
+package bg.tuvarna.devicebackend.config;
+
+import bg.tuvarna.devicebackend.models.entities.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Remembers the users who have just written, so their own reads keep going to the primary for
+ * {@code datasource.replica.stickiness} and never miss a registration the replica has not replayed yet.
+ */
+@Component
+public class ReplicaStickiness {
+    private final Cache<Long, Boolean> recentWriters;
+
+    public ReplicaStickiness(@Value("${datasource.replica.stickiness:10s}") Duration stickiness) {
+        this.recentWriters = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(stickiness)
+                .build();
+    }
+
+    public void markWritten(Long userId) {
+        if (userId != null) {
+            recentWriters.put(userId, Boolean.TRUE);
+        }
+    }
+
+    public boolean isSticky() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null
+                && authentication.getPrincipal() instanceof User user
+                && user.getId() != null
+                && recentWriters.getIfPresent(user.getId()) != null;
+    }
+}
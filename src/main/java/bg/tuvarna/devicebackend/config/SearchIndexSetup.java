@@ -0,0 +1,50 @@
+package bg.tuvarna.devicebackend.config;
+
+import bg.tuvarna.devicebackend.repositories.DeviceRepository;
+import bg.tuvarna.devicebackend.repositories.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Backfills the search documents of rows written before they existed and, on PostgreSQL,
+ * creates the pg_trgm GIN indexes that serve the admin search's {@code LIKE '%term%'} predicates.
+ */
+@Component
+@RequiredArgsConstructor
+public class SearchIndexSetup implements CommandLineRunner {
+    private static final Logger logger = LoggerFactory.getLogger(SearchIndexSetup.class);
+    private static final List<String> TRIGRAM_INDEXES = List.of(
+            "create extension if not exists pg_trgm",
+            "create index if not exists idx_devices_search_document on devices using gin (search_document gin_trgm_ops)",
+            "create index if not exists idx_users_search_document on users using gin (search_document gin_trgm_ops)"
+    );
+
+    private final DeviceRepository deviceRepository;
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(String... args) {
+        userRepository.fillMissingSearchDocuments();
+        deviceRepository.fillMissingSearchDocuments();
+
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            return;
+        }
+
+        try {
+            TRIGRAM_INDEXES.forEach(jdbcTemplate::execute);
+        } catch (DataAccessException e) {
+            logger.warn("Could not create trigram search indexes, admin search will scan: {}", e.getMessage());
+        }
+    }
+}
@@ -3,13 +3,16 @@ package bg.tuvarna.devicebackend.config;
 import bg.tuvarna.devicebackend.models.entities.User;
 import bg.tuvarna.devicebackend.repositories.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
 @RequiredArgsConstructor
-public class UserDetailsServiceConfig implements UserDetailsService {
+public class UserDetailsServiceConfig implements UserDetailsService, UserDetailsPasswordService {
     private final UserRepository userRepository;
 
     @Override
@@ -20,4 +23,13 @@ public class UserDetailsServiceConfig implements UserDetailsService {
         }
         return profile;
     }
-}
\ No newline at end of file
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.PRINCIPALS, key = "#user.id")
+    public User updatePassword(UserDetails user, String newPassword) {
+        User profile = userRepository.findById(((User) user).getId())
+                .orElseThrow(() -> new UsernameNotFoundException(user.getUsername()));
+        profile.setPassword(newPassword);
+        return userRepository.save(profile);
+    }
+}
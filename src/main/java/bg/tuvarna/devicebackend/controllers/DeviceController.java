@@ -2,11 +2,18 @@ package bg.tuvarna.devicebackend.controllers;
 
 import bg.tuvarna.devicebackend.controllers.exceptions.ErrorResponse;
 import bg.tuvarna.devicebackend.models.dtos.DeviceCreateVO;
+import bg.tuvarna.devicebackend.models.dtos.DeviceImportResultVO;
+import bg.tuvarna.devicebackend.models.dtos.DeviceListing;
 import bg.tuvarna.devicebackend.models.dtos.DeviceUpdateVO;
 import bg.tuvarna.devicebackend.models.dtos.DeviceVO;
+import bg.tuvarna.devicebackend.models.dtos.RenovationVO;
 import bg.tuvarna.devicebackend.models.entities.Device;
 import bg.tuvarna.devicebackend.models.entities.User;
+import bg.tuvarna.devicebackend.models.enums.ExportFormat;
+import bg.tuvarna.devicebackend.services.DeviceImportService;
 import bg.tuvarna.devicebackend.services.DeviceService;
+import bg.tuvarna.devicebackend.services.ExportService;
+import bg.tuvarna.devicebackend.services.RenovationService;
 import bg.tuvarna.devicebackend.utils.CustomPage;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -16,25 +23,94 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.Set;
+
 @RestController
 @RequestMapping("/api/v1/devices")
 @AllArgsConstructor
 public class DeviceController {
     private final DeviceService deviceService;
+    private final DeviceImportService deviceImportService;
+    private final ExportService exportService;
+    private final RenovationService renovationService;
+
+    @Operation(
+            description = "Stream all devices as NDJSON or CSV (format), optionally joined with their user, passport " +
+                    "and renovations (include). The response is gzip-encoded when the client accepts it.",
+            summary = "Export devices"
+    )
+    @GetMapping("/export")
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<StreamingResponseBody> exportDevices(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "user,passport") Set<String> include,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        ExportFormat exportFormat = ExportFormat.of(format);
+        ExportService.requireDeviceIncludes(include);
+        boolean gzip = ExportService.acceptsGzip(acceptEncoding);
+
+        return ResponseEntity.ok()
+                .headers(ExportService.headers("devices", exportFormat, gzip))
+                .body(out -> exportService.exportDevices(out, exportFormat, include, gzip));
+    }
 
     @Operation(
-            description = "Return device by id for logged in user.",
+            description = "Return device by id for logged in user. Answers 304 when If-None-Match holds the current ETag.",
             summary = "Return device by id"
     )
     @GetMapping("/{id}")
     @SecurityRequirement(name = "bearerAuth")
-    public DeviceVO findDevice(@PathVariable String id) {
-        return new DeviceVO(deviceService.findDevice(id));
+    public ResponseEntity<DeviceVO> findDevice(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "false") boolean includeRenovations,
+            WebRequest request
+    ) {
+        Device device = deviceService.findDevice(id);
+        String eTag = DeviceVO.entityTag(device, true, includeRenovations);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(new DeviceVO(device, true, includeRenovations));
+    }
+
+    @Operation(
+            description = "Get the renovations of a device, newest first, optionally limited to a renovation date range (inclusive).",
+            summary = "Get device renovations"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of renovations."),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Device not registered or from is after to.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ErrorResponse.class)
+                    )
+            )
+    })
+    @GetMapping("/{id}/renovations")
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<CustomPage<RenovationVO>> getRenovations(
+            @PathVariable String id,
+            @RequestParam(required = false) LocalDate from,
+            @RequestParam(required = false) LocalDate to,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        return ResponseEntity.ok(renovationService.getHistory(id, from, to, page, size));
     }
 
     @Operation(
@@ -93,15 +169,23 @@ public class DeviceController {
 
     @Operation(
             summary = "Returns devices.",
-            description = "Returns devices based on search."
+            description = "Returns devices based on search. Passing after (empty for the first page) switches to " +
+                    "cursor pagination ordered by serial number, the response then carries nextCursor and " +
+                    "totalItems only when includeTotal is set."
     )
     @GetMapping
     @SecurityRequirement(name = "bearerAuth")
-    public ResponseEntity<CustomPage<Device>> getDevices(
+    public ResponseEntity<CustomPage<DeviceListing>> getDevices(
             @RequestParam(required = false) String searchBy,
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean includeTotal
     ) {
+        if (after != null) {
+            return ResponseEntity.ok(deviceService.getDevices(searchBy, after, size, includeTotal));
+        }
+
         return ResponseEntity.ok(deviceService.getDevices(searchBy, page, size));
     }
 
@@ -143,6 +227,42 @@ public class DeviceController {
                 .body(new DeviceVO(saved));
     }
 
+    @Operation(
+            description = "Register anonymous devices from a sell-through feed streamed as CSV " +
+                    "(deviceSerialNumber,purchaseDate header) or NDJSON. Rows are committed in batches, " +
+                    "a failed upload can be resumed by passing the number of completed batches as fromBatch.",
+            summary = "Import sell-through feed"
+    )
+    @ApiResponses(
+            value = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Feed processed.",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = DeviceImportResultVO.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "CSV header is missing a column.",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class)
+                            )
+                    )
+            }
+    )
+    @PostMapping(value = "/import", consumes = {DeviceImportService.CSV, DeviceImportService.NDJSON})
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<DeviceImportResultVO> importDevices(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @RequestParam(defaultValue = "0") int fromBatch,
+            InputStream body
+    ) throws IOException {
+        return ResponseEntity.ok(deviceImportService.importDevices(body, contentType, fromBatch));
+    }
+
     @Operation(
             description = "Update device date by admin.",
             summary = "Update device date by admin."
@@ -157,6 +277,22 @@ public class DeviceController {
                                     mediaType = "application/json",
                                     schema = @Schema(implementation = ErrorResponse.class)
                             )
+                    ),
+                    @ApiResponse(
+                            responseCode = "409",
+                            description = "Device was changed concurrently, reload it and retry the request.",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "412",
+                            description = "If-Match does not hold the current ETag of the device.",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class)
+                            )
                     )
             }
     )
@@ -164,9 +300,12 @@ public class DeviceController {
     @SecurityRequirement(name = "bearerAuth")
     public ResponseEntity<DeviceVO> updateDevice(
             @PathVariable String serialNumber,
-            @RequestBody @Valid DeviceUpdateVO device
+            @RequestBody @Valid DeviceUpdateVO device,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) {
-        return ResponseEntity.ok(new DeviceVO(deviceService.updateDevice(serialNumber, device)));
+        Device updated = deviceService.updateDevice(serialNumber, device, ifMatch);
+
+        return ResponseEntity.ok().eTag(DeviceVO.entityTag(updated, true, false)).body(new DeviceVO(updated));
     }
 
     @Operation(
@@ -2,7 +2,9 @@ package bg.tuvarna.devicebackend.controllers;
 
 import bg.tuvarna.devicebackend.models.dtos.*;
 import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.services.PassportImportService;
 import bg.tuvarna.devicebackend.services.PassportService;
+import bg.tuvarna.devicebackend.services.WarrantyRecomputeService;
 import bg.tuvarna.devicebackend.utils.CustomPage;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -12,15 +14,22 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 @RestController
 @RequestMapping("api/v1/passports")
 @AllArgsConstructor
 public class PassportController {
     private final PassportService passportService;
+    private final PassportImportService passportImportService;
+    private final WarrantyRecomputeService warrantyRecomputeService;
 
     @Operation(
             description = "Create passport",
@@ -52,6 +61,31 @@ public class PassportController {
                 .body(new PassportVO(saved));
     }
 
+    @Operation(
+            description = "Import a passport catalog streamed as CSV (with a header row) or NDJSON. " +
+                    "Rows are validated and inserted in batches, invalid or overlapping rows are reported by line.",
+            summary = "Import passports"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Catalog processed",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = PassportImportResultVO.class)
+                    )
+            ),
+            @ApiResponse(responseCode = "400", description = "Bad request - CSV header is missing a column")
+    })
+    @PostMapping(value = "/import", consumes = {PassportImportService.CSV, PassportImportService.NDJSON})
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<PassportImportResultVO> importPassports(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body
+    ) throws IOException {
+        return ResponseEntity.ok(passportImportService.importPassports(body, contentType));
+    }
+
     @Operation(
             description = "Update passport",
             summary = "Update passport"
@@ -77,15 +111,53 @@ public class PassportController {
     }
 
     @Operation(
-            description = "Get passports",
+            description = "Recompute the warranty expiration date of every device of the passport in the background. " +
+                    "Runs automatically when warrantyMonths changes.",
+            summary = "Recompute device warranties"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Recomputation queued",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = WarrantyRecomputeVO.class)
+                    )
+            ),
+            @ApiResponse(responseCode = "400", description = "Bad request - passport not found")
+    })
+    @PostMapping("/{id}/warranty-recompute")
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<WarrantyRecomputeVO> recomputeWarranties(@PathVariable Long id) {
+        return ResponseEntity.accepted().body(passportService.recomputeWarranties(id));
+    }
+
+    @Operation(
+            description = "Get the progress of the latest warranty recomputation of the passport",
+            summary = "Get warranty recomputation progress"
+    )
+    @GetMapping("/{id}/warranty-recompute")
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<WarrantyRecomputeVO> getWarrantyRecompute(@PathVariable Long id) {
+        return ResponseEntity.ok(warrantyRecomputeService.progress(id));
+    }
+
+    @Operation(
+            description = "Get passports. Passing after (empty for the first page) switches to cursor pagination by id.",
             summary = "Get passports"
     )
     @GetMapping
     @SecurityRequirement(name = "bearerAuth")
     public ResponseEntity<CustomPage<Passport>> getPassports(
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean includeTotal
     ) {
+        if (after != null) {
+            return ResponseEntity.ok(passportService.getPassports(after, size, includeTotal));
+        }
+
         return ResponseEntity.ok(passportService.getPassports(page, size));
     }
 
@@ -103,12 +175,18 @@ public class PassportController {
 
 
     @Operation(
-            description = "Get passport by id",
+            description = "Get passport by id. Answers 304 when If-None-Match holds the current ETag.",
             summary = "Get passport by id"
     )
     @GetMapping("/{id}")
-    public ResponseEntity<PassportVO> getPassportById(@PathVariable Long id) {
-        return ResponseEntity.ok(new PassportVO(passportService.findPassportById(id)));
+    public ResponseEntity<PassportVO> getPassportById(@PathVariable Long id, WebRequest request) {
+        Passport passport = passportService.findPassportById(id);
+        String eTag = PassportVO.entityTag(passport);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(new PassportVO(passport));
     }
 
     @Operation(
@@ -1,5 +1,6 @@
 package bg.tuvarna.devicebackend.controllers;
 
+import bg.tuvarna.devicebackend.models.dtos.RenovationBatchResultVO;
 import bg.tuvarna.devicebackend.models.dtos.RenovationCreateVO;
 import bg.tuvarna.devicebackend.models.dtos.RenovationVO;
 import bg.tuvarna.devicebackend.models.entities.Renovation;
@@ -19,6 +20,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/v1/renovations")
 @AllArgsConstructor
@@ -55,4 +58,28 @@ public class RenovationController {
                 )
                 .body(new RenovationVO(saved));
     }
+
+    @Operation(
+            description = "Add a batch of renovations. Every item is validated on its own and valid items are " +
+                    "written in group-committed batches, the response holds one result per item in request order.",
+            summary = "Add renovations in batch"
+    )
+    @ApiResponses(
+            value = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Batch processed",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = RenovationBatchResultVO.class)
+                            )
+                    ),
+                    @ApiResponse(responseCode = "400", description = "Bad request - too many renovations in the batch")
+            }
+    )
+    @PostMapping("/batch")
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<RenovationBatchResultVO> saveRenovations(@RequestBody List<RenovationCreateVO> vos) {
+        return ResponseEntity.ok(renovationService.saveAll(vos));
+    }
 }
\ No newline at end of file
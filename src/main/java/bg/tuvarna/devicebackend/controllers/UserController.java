@@ -3,6 +3,8 @@ package bg.tuvarna.devicebackend.controllers;
 import bg.tuvarna.devicebackend.controllers.exceptions.ErrorResponse;
 import bg.tuvarna.devicebackend.models.dtos.*;
 import bg.tuvarna.devicebackend.models.entities.User;
+import bg.tuvarna.devicebackend.models.enums.ExportFormat;
+import bg.tuvarna.devicebackend.services.ExportService;
 import bg.tuvarna.devicebackend.services.UserService;
 import bg.tuvarna.devicebackend.utils.CustomPage;
 import io.swagger.v3.oas.annotations.Operation;
@@ -13,15 +15,19 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/v1/users")
 @AllArgsConstructor
 public class UserController {
     private final UserService userService;
+    private final ExportService exportService;
 
     @Operation(
             summary = "Register user.",
@@ -73,31 +79,60 @@ public class UserController {
 
     @Operation(
             summary = "Returns users.",
-            description = "Returns users based on search."
+            description = "Returns users based on search. Passing after (empty for the first page) switches to " +
+                    "cursor pagination ordered by id, the response then carries nextCursor and " +
+                    "totalItems only when includeTotal is set."
     )
     @GetMapping
     @SecurityRequirement(name = "bearerAuth")
     public ResponseEntity<CustomPage<UserListing>> getUsers(
             @RequestParam(required = false) String searchBy,
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean includeTotal
     ) {
+        if (after != null) {
+            return ResponseEntity.ok(userService.getUsers(searchBy, after, size, includeTotal));
+        }
+
         return ResponseEntity.ok(userService.getUsers(searchBy, page, size));
     }
 
+    @Operation(
+            summary = "Export users.",
+            description = "Stream all users with their device count as NDJSON or CSV (format). " +
+                    "The response is gzip-encoded when the client accepts it."
+    )
+    @GetMapping("/export")
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        ExportFormat exportFormat = ExportFormat.of(format);
+        boolean gzip = ExportService.acceptsGzip(acceptEncoding);
+
+        return ResponseEntity.ok()
+                .headers(ExportService.headers("users", exportFormat, gzip))
+                .body(out -> exportService.exportUsers(out, exportFormat, gzip));
+    }
+
     @Operation(
             summary = "Update user.",
-            description = "Update user."
+            description = "Update user. With If-Match the update is applied only while the user still has that ETag (412 otherwise); " +
+                    "without it an update that races a concurrent change answers 409."
     )
     @PutMapping("/{id}")
     @SecurityRequirement(name = "bearerAuth")
     public ResponseEntity<UserVO> updateUser(
             @PathVariable Long id,
-            @RequestBody @Valid UserUpdateVO userUpdateVO
+            @RequestBody @Valid UserUpdateVO userUpdateVO,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
     ) {
-        User updatedUser = userService.updateUser(id, userUpdateVO);
+        User updatedUser = userService.updateUser(id, userUpdateVO, ifMatch);
 
-        return ResponseEntity.ok(new UserVO(updatedUser));
+        return ResponseEntity.ok().eTag(UserVO.entityTag(updatedUser)).body(new UserVO(updatedUser));
     }
 
     @Operation(
@@ -133,7 +168,13 @@ public class UserController {
     )
     @GetMapping("/getUser")
     @SecurityRequirement(name = "bearerAuth")
-    public ResponseEntity<UserVO> getUser(@AuthenticationPrincipal User user) {
-        return ResponseEntity.ok(new UserVO(user));
+    public ResponseEntity<UserVO> getUser(@AuthenticationPrincipal User user, WebRequest request) {
+        User loaded = userService.getUserWithDevices(user.getId());
+        String eTag = UserVO.entityTag(loaded);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(new UserVO(loaded));
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package bg.tuvarna.devicebackend.controllers.exceptions;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.ObjectError;
@@ -21,9 +22,21 @@ public class CustomExceptionHandler {
 
     @ExceptionHandler(CustomException.class)
     public ResponseEntity<ErrorResponse> handleCustomExceptions(CustomException ex) {
+        HttpStatus status = switch (ex.getErrorCode()) {
+            case TooManyRequests -> HttpStatus.TOO_MANY_REQUESTS;
+            case PreconditionFailed -> HttpStatus.PRECONDITION_FAILED;
+            case Conflict -> HttpStatus.CONFLICT;
+            default -> HttpStatus.BAD_REQUEST;
+        };
+
+        return new ResponseEntity<>(new ErrorResponse(ex), status);
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ErrorResponse> handleOptimisticLockingFailure(OptimisticLockingFailureException ex) {
         return new ResponseEntity<>(
-                new ErrorResponse(ex),
-                HttpStatus.BAD_REQUEST
+                new ErrorResponse(new CustomException("Modified concurrently, try again", ErrorCode.Conflict)),
+                HttpStatus.CONFLICT
         );
     }
 
@@ -12,7 +12,10 @@ public enum ErrorCode {
     WrongCredentials(2),
     NotRegistered(3),
     Failed(4),
-    Validation(5);
+    Validation(5),
+    TooManyRequests(6),
+    PreconditionFailed(7),
+    Conflict(8);
 
     private final int code;
 
@@ -0,0 +1,12 @@
+package bg.tuvarna.devicebackend.models.dtos;
+
+import java.util.List;
+
+public record DeviceImportResultVO(
+        int registered,
+        int failed,
+        int batchSize,
+        int completedBatches,
+        List<ImportRowErrorVO> errors
+) {
+}
@@ -0,0 +1,68 @@
+package bg.tuvarna.devicebackend.models.dtos;
+
+import bg.tuvarna.devicebackend.models.entities.Device;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.LocalDate;
+
+/**
+ * Row of the device listings. The flat constructor is the target of the listing projection queries,
+ * which select only these columns; the renovation count and latest renovation are attached afterwards with one query per page.
+ */
+public record DeviceListing(
+        String serialNumber,
+        LocalDate purchaseDate,
+        LocalDate warrantyExpirationDate,
+        String comment,
+        PassportVO passport,
+        long renovationCount,
+        RenovationVO latestRenovation,
+        @JsonIgnore Long userId
+) {
+    public DeviceListing(
+            String serialNumber,
+            LocalDate purchaseDate,
+            LocalDate warrantyExpirationDate,
+            String comment,
+            Long userId,
+            Long passportId,
+            String passportName,
+            String passportModel,
+            String serialPrefix,
+            Integer fromSerialNumber,
+            Integer toSerialNumber,
+            Integer warrantyMonths
+    ) {
+        this(
+                serialNumber,
+                purchaseDate,
+                warrantyExpirationDate,
+                comment,
+                passportId != null ? new PassportVO(
+                        passportId, passportName, passportModel, serialPrefix, fromSerialNumber, toSerialNumber, warrantyMonths
+                ) : null,
+                0,
+                null,
+                userId
+        );
+    }
+
+    public DeviceListing(Device device) {
+        this(
+                device.getSerialNumber(),
+                device.getPurchaseDate(),
+                device.getWarrantyExpirationDate(),
+                device.getComment(),
+                device.getPassport() != null ? new PassportVO(device.getPassport()) : null,
+                device.getRenovationCount(),
+                device.getLatestRenovation() != null ? new RenovationVO(device.getLatestRenovation(), false) : null,
+                device.getUser() != null ? device.getUser().getId() : null
+        );
+    }
+
+    public DeviceListing withRenovations(long renovationCount, RenovationVO latestRenovation) {
+        return new DeviceListing(
+                serialNumber, purchaseDate, warrantyExpirationDate, comment, passport, renovationCount, latestRenovation, userId
+        );
+    }
+}
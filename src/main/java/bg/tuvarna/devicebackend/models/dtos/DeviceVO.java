@@ -1,10 +1,16 @@
 package bg.tuvarna.devicebackend.models.dtos;
 
 import bg.tuvarna.devicebackend.models.entities.Device;
+import bg.tuvarna.devicebackend.utils.EntityTags;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.time.LocalDate;
 import java.util.List;
 
+/**
+ * A device with a summary of its service history. The full history is only attached when requested,
+ * otherwise {@code renovations} is left out and clients page through it separately.
+ */
 public record DeviceVO(
         String serialNumber,
         LocalDate purchaseDate,
@@ -12,21 +18,19 @@ public record DeviceVO(
         String comment,
         UserVO user,
         PassportVO passport,
-        List<RenovationVO> renovations
+        long renovationCount,
+        RenovationVO latestRenovation,
+        @JsonInclude(JsonInclude.Include.NON_NULL) List<RenovationVO> renovations
 ) {
     public DeviceVO(Device device) {
-        this(
-                device.getSerialNumber(),
-                device.getPurchaseDate(),
-                device.getWarrantyExpirationDate(),
-                device.getComment(),
-                device.getUser() != null ? new UserVO(device.getUser(), false) : null,
-                new PassportVO(device.getPassport()),
-                device.getRenovations().stream().map(RenovationVO::new).toList()
-        );
+        this(device, true, false);
     }
 
     public DeviceVO(Device device, boolean loadUser) {
+        this(device, loadUser, false);
+    }
+
+    public DeviceVO(Device device, boolean loadUser, boolean loadRenovations) {
         this(
                 device.getSerialNumber(),
                 device.getPurchaseDate(),
@@ -34,7 +38,28 @@ public record DeviceVO(
                 device.getComment(),
                 loadUser && device.getUser() != null ? new UserVO(device.getUser(), false) : null,
                 new PassportVO(device.getPassport()),
-                device.getRenovations().stream().map(RenovationVO::new).toList()
+                device.getRenovationCount(),
+                device.getLatestRenovation() != null ? new RenovationVO(device.getLatestRenovation(), false) : null,
+                loadRenovations ? device.getRenovations().stream().map(r -> new RenovationVO(r, false)).toList() : null
+        );
+    }
+
+    /**
+     * Tag of the representation built by {@link #DeviceVO(Device, boolean, boolean)}. Renovations are never updated,
+     * so their count and the latest id are enough to track them.
+     */
+    public static String entityTag(Device device, boolean loadUser, boolean loadRenovations) {
+        return EntityTags.of("device", tagParts(device, loadUser), loadRenovations);
+    }
+
+    static String tagParts(Device device, boolean loadUser) {
+        return String.join(".",
+                device.getSerialNumber(),
+                String.valueOf(device.getVersion()),
+                String.valueOf(device.getPassport() != null ? device.getPassport().getVersion() : null),
+                String.valueOf(loadUser && device.getUser() != null ? device.getUser().getVersion() : null),
+                String.valueOf(device.getRenovationCount()),
+                String.valueOf(device.getLatestRenovation() != null ? device.getLatestRenovation().getId() : null)
         );
     }
 }
\ No newline at end of file
@@ -1,7 +1,7 @@
 package bg.tuvarna.devicebackend.models.dtos;
 
 import bg.tuvarna.devicebackend.models.entities.Passport;
-
+import bg.tuvarna.devicebackend.utils.EntityTags;
 
 public record PassportVO(
         Long id,
@@ -23,4 +23,8 @@ public record PassportVO(
                 passport.getWarrantyMonths()
         );
     }
+
+    public static String entityTag(Passport passport) {
+        return EntityTags.of("passport", passport.getId(), passport.getVersion());
+    }
 }
\ No newline at end of file
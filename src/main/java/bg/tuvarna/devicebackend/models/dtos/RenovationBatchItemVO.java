@@ -0,0 +1,9 @@
+package bg.tuvarna.devicebackend.models.dtos;
+
+public record RenovationBatchItemVO(
+        int index,
+        String deviceSerialNumber,
+        Long id,
+        String error
+) {
+}
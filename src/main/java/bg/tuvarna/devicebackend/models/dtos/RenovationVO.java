@@ -1,6 +1,7 @@
 package bg.tuvarna.devicebackend.models.dtos;
 
 import bg.tuvarna.devicebackend.models.entities.Renovation;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.time.LocalDate;
 
@@ -8,7 +9,7 @@ public record RenovationVO(
         Long id,
         String description,
         LocalDate renovationDate,
-        DeviceVO device
+        @JsonInclude(JsonInclude.Include.NON_NULL) DeviceVO device
 ) {
     public RenovationVO(Renovation renovation){
         this(
@@ -18,4 +19,13 @@ public record RenovationVO(
                 new DeviceVO(renovation.getDevice())
         );
     }
+
+    public RenovationVO(Renovation renovation, boolean loadDevice){
+        this(
+                renovation.getId(),
+                renovation.getDescription(),
+                renovation.getRenovationDate(),
+                loadDevice ? new DeviceVO(renovation.getDevice()) : null
+        );
+    }
 }
\ No newline at end of file
@@ -3,7 +3,9 @@ package bg.tuvarna.devicebackend.models.dtos;
 import bg.tuvarna.devicebackend.models.entities.Device;
 import bg.tuvarna.devicebackend.models.entities.User;
 import bg.tuvarna.devicebackend.models.enums.UserRole;
+import bg.tuvarna.devicebackend.utils.EntityTags;
 
+import java.util.Comparator;
 import java.util.List;
 
 public record UserVO(
@@ -38,4 +40,16 @@ public record UserVO(
                 loadDevices ? user.getDevices().stream().map((Device d) -> new DeviceVO(d, false)).toList() : null
         );
     }
+
+    public static String entityTag(User user) {
+        return EntityTags.of(
+                "user",
+                user.getId(),
+                user.getVersion(),
+                user.getDevices().stream()
+                        .sorted(Comparator.comparing(Device::getSerialNumber))
+                        .map(d -> DeviceVO.tagParts(d, false))
+                        .toList()
+        );
+    }
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package bg.tuvarna.devicebackend.models.dtos;
+
+import bg.tuvarna.devicebackend.models.enums.WarrantyRecomputeStatus;
+
+import java.time.Instant;
+
+public record WarrantyRecomputeVO(
+        Long passportId,
+        int warrantyMonths,
+        WarrantyRecomputeStatus status,
+        long total,
+        long processed,
+        long updated,
+        Instant startedAt,
+        Instant finishedAt
+) {
+}
@@ -2,18 +2,36 @@ package bg.tuvarna.devicebackend.models.entities;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.Formula;
+import org.hibernate.annotations.JoinFormula;
+import org.springframework.data.domain.Persistable;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Entity
-@Table(name = "devices", schema = "public")
+@Table(
+        name = Device.TABLE,
+        schema = "public",
+        indexes = {
+                @Index(name = "idx_devices_warranty_expiration", columnList = "warrantyExpirationDate, serialNumber"),
+                @Index(name = "idx_devices_passport", columnList = "passport_id, serialNumber")
+        }
+)
 @Getter
 @Setter
-public class Device {
+public class Device implements Persistable<String> {
+    public static final String TABLE = "devices";
+
     @Id
     @Column(name = "serialNumber", nullable = false)
     private String serialNumber;
@@ -21,7 +39,16 @@ public class Device {
     private LocalDate warrantyExpirationDate;
     private String comment;
 
-    @ManyToOne
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
+    @JsonIgnore
+    @Column(length = 2048)
+    private String searchDocument;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     @JsonIgnore
     private User user;
@@ -30,7 +57,65 @@ public class Device {
     @JoinColumn(name = "passport_id")
     private Passport passport;
 
-    @OneToMany(mappedBy = "device", orphanRemoval = true, cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "device", orphanRemoval = true, cascade = CascadeType.ALL)
+    @OrderBy("renovationDate desc, id desc")
     private List<Renovation> renovations = new ArrayList<>();
 
-}
\ No newline at end of file
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @Formula("(select count(*) from renovations r where r.device_serial_number = serial_number)")
+    private long renovationCount;
+
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinFormula("(select r.id from renovations r where r.device_serial_number = serial_number " +
+            "order by r.renovation_date desc, r.id desc limit 1)")
+    private Renovation latestRenovation;
+
+    // Serial numbers are assigned, so without this flag save() would merge and read the row before inserting it.
+    @Transient
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean persisted;
+
+    @Override
+    @JsonIgnore
+    public String getId() {
+        return serialNumber;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        persisted = true;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void refreshSearchDocument() {
+        searchDocument = searchDocumentOf(serialNumber, user, passport);
+    }
+
+    /**
+     * Denormalized text matched by the admin search. Must stay in line with
+     * {@link bg.tuvarna.devicebackend.repositories.DeviceRepository#SEARCH_DOCUMENT}.
+     */
+    public static String searchDocumentOf(String serialNumber, User user, Passport passport) {
+        String owner = user == null ? "" : join(user.getFullName(), user.getEmail(), user.getPhone(), user.getAddress());
+        String product = passport == null ? "" : join(passport.getName(), passport.getModel());
+
+        return join(serialNumber, owner, product).toLowerCase(Locale.ROOT);
+    }
+
+    private static String join(String... values) {
+        return Stream.of(values).map(v -> Objects.toString(v, "")).collect(Collectors.joining(" "));
+    }
+}
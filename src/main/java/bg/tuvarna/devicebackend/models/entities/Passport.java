@@ -1,15 +1,22 @@
 package bg.tuvarna.devicebackend.models.entities;
 
+import bg.tuvarna.devicebackend.models.listeners.PassportIndexListener;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 
 @Entity
-@Table(name = "passports", schema = "public")
+@Table(
+        name = "passports",
+        schema = "public",
+        indexes = @Index(name = "idx_passports_prefix_range", columnList = "serialPrefix, fromSerialNumber, toSerialNumber")
+)
 @Getter
 @Setter
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
+@EntityListeners(PassportIndexListener.class)
 public class Passport {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -21,4 +28,13 @@ public class Passport {
     private int fromSerialNumber;
     private int toSerialNumber;
     private int warrantyMonths;
+
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
+    public Passport(Long id, String name, String model, String serialPrefix, int fromSerialNumber, int toSerialNumber, int warrantyMonths) {
+        this(id, name, model, serialPrefix, fromSerialNumber, toSerialNumber, warrantyMonths, 0);
+    }
 }
\ No newline at end of file
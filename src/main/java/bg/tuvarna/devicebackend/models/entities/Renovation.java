@@ -4,11 +4,16 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDate;
 
 @Entity
-@Table(name = "renovations", schema = "public")
+@Table(
+        name = "renovations",
+        schema = "public",
+        indexes = @Index(name = "idx_renovations_device_date", columnList = "device_serial_number, renovationDate")
+)
 @Getter
 @Setter
 public class Renovation {
@@ -20,7 +25,12 @@ public class Renovation {
     private String description;
     private LocalDate renovationDate;
 
-    @ManyToOne
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "device_serial_number")
     @JsonIgnore
     private Device device;
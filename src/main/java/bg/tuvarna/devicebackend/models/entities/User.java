@@ -2,23 +2,39 @@ package bg.tuvarna.devicebackend.models.entities;
 
 import bg.tuvarna.devicebackend.models.dtos.UserCreateVO;
 import bg.tuvarna.devicebackend.models.enums.UserRole;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Entity
-@Table(name = "users", schema = "public")
+@Table(
+        name = "users",
+        schema = "public",
+        uniqueConstraints = {
+                @UniqueConstraint(name = User.UNIQUE_EMAIL, columnNames = "email"),
+                @UniqueConstraint(name = User.UNIQUE_PHONE, columnNames = "phone")
+        }
+)
 @Getter
 @Setter
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 public class User implements UserDetails {
+    public static final String UNIQUE_EMAIL = "uk_users_email";
+    public static final String UNIQUE_PHONE = "uk_users_phone";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "id", nullable = false)
@@ -31,7 +47,16 @@ public class User implements UserDetails {
     @Enumerated(EnumType.STRING)
     private UserRole role;
 
-    @OneToMany(mappedBy = "user", orphanRemoval = true, cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
+    @JsonIgnore
+    @Column(length = 1024)
+    private String searchDocument;
+
+    @OneToMany(mappedBy = "user", orphanRemoval = true, cascade = CascadeType.ALL)
     private List<Device> devices;
 
     public User(UserCreateVO vo) {
@@ -42,6 +67,15 @@ public class User implements UserDetails {
         this.role = UserRole.USER;
     }
 
+    @PrePersist
+    @PreUpdate
+    public void refreshSearchDocument() {
+        searchDocument = Stream.of(fullName, email, phone, address)
+                .map(v -> Objects.toString(v, ""))
+                .collect(Collectors.joining(" "))
+                .toLowerCase(Locale.ROOT);
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return List.of(new SimpleGrantedAuthority(role.name()));
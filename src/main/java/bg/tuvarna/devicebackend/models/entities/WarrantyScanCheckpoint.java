@@ -0,0 +1,39 @@
+package bg.tuvarna.devicebackend.models.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Progress of one partition of a warranty scan: the slice of expiration dates it covers and the
+ * keyset position (expiration date, serial number) of the last device it has notified.
+ */
+@Entity
+@Table(name = "warranty_scan_checkpoints", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+public class WarrantyScanCheckpoint {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    private LocalDate sliceFrom;
+    private LocalDate sliceTo;
+    private LocalDate lastExpirationDate;
+    private String lastSerialNumber;
+    private long notified;
+    private boolean completed;
+    private Instant updatedAt;
+
+    public WarrantyScanCheckpoint(LocalDate sliceFrom, LocalDate sliceTo) {
+        this.sliceFrom = sliceFrom;
+        this.sliceTo = sliceTo;
+        this.updatedAt = Instant.now();
+    }
+}
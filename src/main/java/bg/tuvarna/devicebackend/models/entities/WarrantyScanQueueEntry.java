@@ -0,0 +1,28 @@
+package bg.tuvarna.devicebackend.models.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * A device whose warranty expiration was written after the warranty scan may already have covered its new date.
+ * The next scan notifies it if the date lies in the scanned range and removes the entry.
+ */
+@Entity
+@Table(name = "warranty_scan_queue", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+public class WarrantyScanQueueEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @Column(nullable = false)
+    private String serialNumber;
+    private Instant enqueuedAt;
+}
@@ -0,0 +1,9 @@
+package bg.tuvarna.devicebackend.models.enums;
+
+public enum WarrantyRecomputeStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    SUPERSEDED,
+    FAILED
+}
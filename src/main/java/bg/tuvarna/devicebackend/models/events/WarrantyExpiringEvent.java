@@ -0,0 +1,10 @@
+package bg.tuvarna.devicebackend.models.events;
+
+import java.time.LocalDate;
+
+/**
+ * Published once for every device whose warranty enters the notification window of the warranty scan.
+ * {@code userId} is null for anonymously registered devices.
+ */
+public record WarrantyExpiringEvent(String serialNumber, Long userId, LocalDate warrantyExpirationDate) {
+}
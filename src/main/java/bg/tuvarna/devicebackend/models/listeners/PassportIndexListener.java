@@ -0,0 +1,49 @@
+package bg.tuvarna.devicebackend.models.listeners;
+
+import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.services.PassportSerialIndex;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Consumer;
+
+public class PassportIndexListener {
+    @Autowired
+    private ObjectProvider<PassportSerialIndex> passportSerialIndex;
+
+    @PostPersist
+    @PostUpdate
+    public void afterSave(Passport passport) {
+        afterCommit(index -> index.put(passport));
+    }
+
+    @PostRemove
+    public void afterRemove(Passport passport) {
+        Long id = passport.getId();
+        afterCommit(index -> index.remove(id));
+    }
+
+    private void afterCommit(Consumer<PassportSerialIndex> action) {
+        PassportSerialIndex index = passportSerialIndex != null ? passportSerialIndex.getIfAvailable() : null;
+        if (index == null) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.accept(index);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.accept(index);
+            }
+        });
+    }
+}
@@ -1,35 +1,96 @@
 package bg.tuvarna.devicebackend.repositories;
 
+import bg.tuvarna.devicebackend.models.dtos.DeviceListing;
 import bg.tuvarna.devicebackend.models.entities.Device;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface DeviceRepository extends JpaRepository<Device, String> {
+    String SEARCH_FILTER = "(:searchBy is null OR d.searchDocument LIKE concat('%',lower(:searchBy),'%'))";
+
+    String SEARCH_RANK = "case when lower(d.serialNumber) = lower(:searchBy) then 0 " +
+            "when lower(d.serialNumber) LIKE concat(lower(:searchBy),'%') then 1 else 2 end";
+
+    String SEARCH_DOCUMENT = "lower(concat(d.serialNumber, ' ', " +
+            "coalesce((select concat(coalesce(u.fullName,''), ' ', coalesce(u.email,''), ' ', coalesce(u.phone,''), ' ', coalesce(u.address,'')) " +
+            "from User u where u = d.user), ''), ' ', " +
+            "coalesce((select concat(coalesce(p.name,''), ' ', coalesce(p.model,'')) from Passport p where p = d.passport), '')))";
+
+    String LISTING = "select new bg.tuvarna.devicebackend.models.dtos.DeviceListing(" +
+            "d.serialNumber, d.purchaseDate, d.warrantyExpirationDate, d.comment, d.user.id, " +
+            "p.id, p.name, p.model, p.serialPrefix, p.fromSerialNumber, p.toSerialNumber, p.warrantyMonths) " +
+            "from Device d left join d.passport p ";
+
+    @Override
+    @EntityGraph(attributePaths = {"user", "passport"})
+    Optional<Device> findById(String serialNumber);
+
     @Transactional
     @Modifying
     @Query("delete from Device d where d.serialNumber = ?1")
     void deleteBySerialNumber(String serialNumber);
 
-    @Query("select distinct d from Device d " +
-            "left join d.user u " +
-            "left join d.passport p " +
-            "where (?1 is null OR ( ?1 is not null AND (lower(d.serialNumber) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(u.fullName) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(u.address) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(u.email) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(u.phone) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(p.name) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(p.model) LIKE concat('%',lower(?1),'%'))))")
+    @Query(value = "select d from Device d where " + SEARCH_FILTER + " order by " + SEARCH_RANK + ", d.serialNumber",
+            countQuery = "select count(d) from Device d where " + SEARCH_FILTER)
     Page<Device> findAll(String searchBy, Pageable pageable);
 
     @Query("select distinct d from Device d " +
             "left join d.user u " +
             "left join d.passport p ")
     Page<Device> getAllDevices(Pageable pageable);
-}
\ No newline at end of file
+
+    @Query("select d from Device d where d.serialNumber > :after AND " + SEARCH_FILTER + " order by d.serialNumber")
+    List<Device> findAllAfter(String searchBy, String after, Limit limit);
+
+    @Query("select d from Device d where d.serialNumber > :after order by d.serialNumber")
+    List<Device> getAllDevicesAfter(String after, Limit limit);
+
+    @Query(value = LISTING + "order by d.serialNumber", countQuery = "select count(d) from Device d")
+    Page<DeviceListing> findAllListings(Pageable pageable);
+
+    @Query(value = LISTING + "where " + SEARCH_FILTER + " order by " + SEARCH_RANK + ", d.serialNumber",
+            countQuery = "select count(d) from Device d where " + SEARCH_FILTER)
+    Page<DeviceListing> searchListings(String searchBy, Pageable pageable);
+
+    @Query(LISTING + "where d.serialNumber > :after order by d.serialNumber")
+    List<DeviceListing> findListingsAfter(String after, Limit limit);
+
+    @Query(LISTING + "where d.serialNumber > :after AND " + SEARCH_FILTER + " order by d.serialNumber")
+    List<DeviceListing> searchListingsAfter(String searchBy, String after, Limit limit);
+
+    @Query(LISTING + "where d.user.id in :userIds order by d.serialNumber")
+    List<DeviceListing> findListingsByUserIds(Collection<Long> userIds);
+
+    @Query("select count(d) from Device d where " + SEARCH_FILTER)
+    long countAll(String searchBy);
+
+    @Query("select d.serialNumber from Device d where d.serialNumber in ?1")
+    List<String> findExistingSerialNumbers(Collection<String> serialNumbers);
+
+    @Transactional
+    @Modifying
+    @Query("update Device d set d.searchDocument = " + SEARCH_DOCUMENT + " where d.user.id = :userId")
+    int refreshSearchDocumentsByUser(Long userId);
+
+    @Transactional
+    @Modifying
+    @Query("update Device d set d.searchDocument = " + SEARCH_DOCUMENT + " where d.passport.id = :passportId")
+    int refreshSearchDocumentsByPassport(Long passportId);
+
+    @Transactional
+    @Modifying
+    @Query("update Device d set d.searchDocument = " + SEARCH_DOCUMENT + " where d.searchDocument is null")
+    int fillMissingSearchDocuments();
+}
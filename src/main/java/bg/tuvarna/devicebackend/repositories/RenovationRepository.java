@@ -1,9 +1,44 @@
 package bg.tuvarna.devicebackend.repositories;
 
 import bg.tuvarna.devicebackend.models.entities.Renovation;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface RenovationRepository extends JpaRepository<Renovation, Long> {
-}
\ No newline at end of file
+    String HISTORY_FILTER = "r.device.serialNumber = :serialNumber and r.renovationDate between :from and :to";
+
+    /**
+     * The latest renovation of each of the given devices, together with the device's renovation count.
+     * Devices without renovations have no row.
+     */
+    @Query("select r.device.serialNumber as serialNumber, r.id as id, r.description as description, " +
+            "r.renovationDate as renovationDate, " +
+            "(select count(c) from Renovation c where c.device = r.device) as renovationCount " +
+            "from Renovation r where r.device.serialNumber in :serialNumbers and r.id = (" +
+            "select l.id from Renovation l where l.device = r.device order by l.renovationDate desc nulls last, l.id desc limit 1)")
+    List<LatestRenovationRow> findLatestBySerialNumbers(Collection<String> serialNumbers);
+
+    @Query(value = "select r from Renovation r where " + HISTORY_FILTER + " order by r.renovationDate desc, r.id desc",
+            countQuery = "select count(r) from Renovation r where " + HISTORY_FILTER)
+    Page<Renovation> findHistory(String serialNumber, LocalDate from, LocalDate to, Pageable pageable);
+
+    interface LatestRenovationRow {
+        String getSerialNumber();
+
+        long getRenovationCount();
+
+        Long getId();
+
+        String getDescription();
+
+        LocalDate getRenovationDate();
+    }
+}
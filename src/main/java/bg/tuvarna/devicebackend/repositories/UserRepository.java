@@ -1,16 +1,34 @@
 package bg.tuvarna.devicebackend.repositories;
 
+import bg.tuvarna.devicebackend.models.dtos.UserListing;
 import bg.tuvarna.devicebackend.models.entities.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
+    String SEARCH_FILTER = "(:searchBy is null OR u.searchDocument LIKE concat('%',lower(:searchBy),'%') OR " +
+            "exists (select 1 from Device d where d.user = u AND d.searchDocument LIKE concat('%',lower(:searchBy),'%')))";
+
+    String SEARCH_RANK = "case when lower(u.email) = lower(:searchBy) OR u.phone = :searchBy then 0 " +
+            "when lower(u.fullName) LIKE concat(lower(:searchBy),'%') then 1 else 2 end";
+
+    String SEARCH_DOCUMENT = "lower(concat(coalesce(u.fullName,''), ' ', coalesce(u.email,''), ' ', " +
+            "coalesce(u.phone,''), ' ', coalesce(u.address,'')))";
+
+    String LISTING = "select new bg.tuvarna.devicebackend.models.dtos.UserListing(" +
+            "u.id, u.fullName, u.address, u.phone, u.email) from User u where u.role!='ADMIN' ";
+
     User getByEmail(String email);
 
     @Query("select u from User u where u.email = ?1 OR u.phone = ?1")
@@ -18,16 +36,14 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     User getByPhone(String phone);
 
-    @Query("select distinct u from User u " +
-            "left join u.devices d " +
-            "left join d.passport p " +
-            "where u.role!='ADMIN' AND (?1 is null OR ( ?1 is not null AND lower(u.fullName) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(u.address) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(u.email) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(u.phone) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(p.name) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(p.model) LIKE concat('%',lower(?1),'%') OR " +
-            "lower(d.serialNumber) LIKE concat('%',lower(?1),'%')))")
+    @Query("select u.password from User u where u.id = :id")
+    Optional<String> findPasswordById(Long id);
+
+    @EntityGraph(attributePaths = {"devices", "devices.passport"})
+    Optional<User> findWithDevicesById(Long id);
+
+    @Query(value = "select u from User u where u.role!='ADMIN' AND " + SEARCH_FILTER + " order by " + SEARCH_RANK + ", u.id",
+            countQuery = "select count(u) from User u where u.role!='ADMIN' AND " + SEARCH_FILTER)
     Page<User> searchBy(String searchBy, Pageable pageable);
 
     @Query("select distinct u from User u " +
@@ -35,4 +51,31 @@ public interface UserRepository extends JpaRepository<User, Long> {
             "left join d.passport p " +
             "where u.role!='ADMIN'")
     Page<User> getAllUsers(Pageable pageable);
-}
\ No newline at end of file
+
+    @Query("select u from User u where u.role!='ADMIN' AND u.id > :after AND " + SEARCH_FILTER + " order by u.id")
+    List<User> searchByAfter(String searchBy, Long after, Limit limit);
+
+    @Query("select u from User u where u.role!='ADMIN' AND u.id > :after order by u.id")
+    List<User> getAllUsersAfter(Long after, Limit limit);
+
+    @Query(value = LISTING + "order by u.id", countQuery = "select count(u) from User u where u.role!='ADMIN'")
+    Page<UserListing> findAllListings(Pageable pageable);
+
+    @Query(value = LISTING + "AND " + SEARCH_FILTER + " order by " + SEARCH_RANK + ", u.id",
+            countQuery = "select count(u) from User u where u.role!='ADMIN' AND " + SEARCH_FILTER)
+    Page<UserListing> searchListings(String searchBy, Pageable pageable);
+
+    @Query(LISTING + "AND u.id > :after order by u.id")
+    List<UserListing> findListingsAfter(Long after, Limit limit);
+
+    @Query(LISTING + "AND u.id > :after AND " + SEARCH_FILTER + " order by u.id")
+    List<UserListing> searchListingsAfter(String searchBy, Long after, Limit limit);
+
+    @Query("select count(u) from User u where u.role!='ADMIN' AND " + SEARCH_FILTER)
+    long countSearchBy(String searchBy);
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.searchDocument = " + SEARCH_DOCUMENT + " where u.searchDocument is null")
+    int fillMissingSearchDocuments();
+}
@@ -0,0 +1,25 @@
+package bg.tuvarna.devicebackend.repositories;
+
+import bg.tuvarna.devicebackend.models.entities.WarrantyScanCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface WarrantyScanCheckpointRepository extends JpaRepository<WarrantyScanCheckpoint, Long> {
+    List<WarrantyScanCheckpoint> findByCompletedFalseOrderBySliceFrom();
+
+    @Query("select max(c.sliceTo) from WarrantyScanCheckpoint c")
+    Optional<LocalDate> findLastScannedDate();
+
+    @Transactional
+    @Modifying
+    @Query("delete from WarrantyScanCheckpoint c where c.completed = true AND c.sliceTo < :before")
+    int deleteCompletedBefore(LocalDate before);
+}
@@ -0,0 +1,230 @@
+package bg.tuvarna.devicebackend.services;
+
+import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
+import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
+import bg.tuvarna.devicebackend.models.dtos.DeviceCreateVO;
+import bg.tuvarna.devicebackend.models.dtos.DeviceImportResultVO;
+import bg.tuvarna.devicebackend.models.dtos.ImportRowErrorVO;
+import bg.tuvarna.devicebackend.models.entities.Device;
+import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.repositories.DeviceRepository;
+import bg.tuvarna.devicebackend.utils.Csv;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Registers anonymous devices from a retailer sell-through feed streamed as CSV or NDJSON.
+ * Rows are grouped in batches of {@code devices.import.batch-size}; every batch resolves passports through
+ * {@link PassportSerialIndex} with one bulk query for the serial numbers it misses, checks already registered serial numbers with one query and is inserted
+ * with a batched JDBC write in its own transaction. Because already registered devices are skipped,
+ * a feed can be re-sent after a failure, and {@code fromBatch} skips the batches that were already committed.
+ * {@code completedBatches} in the result stops at the first batch that failed to commit.
+ */
+@Service
+@RequiredArgsConstructor
+public class DeviceImportService {
+    public static final String CSV = "text/csv";
+    public static final String NDJSON = "application/x-ndjson";
+
+    private static final String INSERT_DEVICE = "insert into devices " +
+            "(serial_number, purchase_date, warranty_expiration_date, passport_id, search_document) values (?, ?, ?, ?, ?)";
+
+    private final DeviceRepository deviceRepository;
+    private final PassportService passportService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final WarrantyScanService warrantyScanService;
+
+    @Value("${devices.import.batch-size:1000}")
+    private int batchSize;
+
+    public DeviceImportResultVO importDevices(InputStream body, String contentType, int fromBatch) throws IOException {
+        boolean csv = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(CSV));
+        Counter registeredRows = meterRegistry.counter("devices.import.rows", "result", "registered");
+        Counter failedRows = meterRegistry.counter("devices.import.rows", "result", "failed");
+
+        List<ImportRowErrorVO> errors = new ArrayList<>();
+        List<PendingDevice> batch = new ArrayList<>(batchSize);
+        ImportProgress progress = new ImportProgress();
+        long rowCount = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            Map<String, Integer> header = csv ? readHeader(reader) : null;
+            long lineNumber = csv ? 1 : 0;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || rowCount++ < (long) fromBatch * batchSize) {
+                    continue;
+                }
+
+                try {
+                    DeviceCreateVO vo = csv ? fromCsv(line, header) : fromJson(line);
+                    batch.add(toPendingDevice(lineNumber, vo));
+                } catch (CustomException e) {
+                    errors.add(new ImportRowErrorVO(lineNumber, e.getMessage()));
+                } catch (JsonProcessingException | DateTimeParseException e) {
+                    errors.add(new ImportRowErrorVO(lineNumber, "Malformed row"));
+                }
+
+                if (rowCount % batchSize == 0) {
+                    flush(batch, errors, progress, (rowCount - 1) / batchSize);
+                }
+            }
+        }
+
+        flush(batch, errors, progress, (rowCount - 1) / batchSize);
+        long completedBatches = progress.failedBatch != null ? progress.failedBatch : (rowCount + batchSize - 1) / batchSize;
+        errors.sort(Comparator.comparingLong(ImportRowErrorVO::line));
+
+        registeredRows.increment(progress.registered);
+        failedRows.increment(errors.size());
+
+        return new DeviceImportResultVO(progress.registered, errors.size(), batchSize, (int) completedBatches, errors);
+    }
+
+    private Map<String, Integer> readHeader(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return Map.of();
+        }
+
+        List<String> columns = Csv.parseLine(line);
+        for (String column : List.of("deviceSerialNumber", "purchaseDate")) {
+            if (!columns.contains(column)) {
+                throw new CustomException("Missing CSV column: " + column, ErrorCode.Validation, column);
+            }
+        }
+
+        return Map.of(
+                "deviceSerialNumber", columns.indexOf("deviceSerialNumber"),
+                "purchaseDate", columns.indexOf("purchaseDate")
+        );
+    }
+
+    private static DeviceCreateVO fromCsv(String line, Map<String, Integer> header) {
+        List<String> fields = Csv.parseLine(line);
+        String serialNumber = field(fields, header.get("deviceSerialNumber"));
+        String purchaseDate = field(fields, header.get("purchaseDate"));
+
+        return new DeviceCreateVO(serialNumber, purchaseDate != null ? LocalDate.parse(purchaseDate) : null);
+    }
+
+    private DeviceCreateVO fromJson(String line) throws JsonProcessingException {
+        JsonNode node = objectMapper.readTree(line);
+        if (node == null || !node.isObject()) {
+            throw new CustomException("Malformed row", ErrorCode.Validation);
+        }
+
+        return objectMapper.treeToValue(node, DeviceCreateVO.class);
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index < fields.size() && !fields.get(index).isEmpty() ? fields.get(index) : null;
+    }
+
+    private PendingDevice toPendingDevice(long line, DeviceCreateVO vo) {
+        if (vo.deviceSerialNumber() == null || vo.deviceSerialNumber().isBlank()) {
+            throw new CustomException("Device serial number is required", ErrorCode.Validation);
+        }
+        if (vo.purchaseDate() == null) {
+            throw new CustomException("Device purchase date is required", ErrorCode.Validation);
+        }
+
+        return new PendingDevice(line, vo.deviceSerialNumber(), vo.purchaseDate(), null);
+    }
+
+    private void flush(List<PendingDevice> batch, List<ImportRowErrorVO> errors, ImportProgress progress, long batchIndex) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        List<String> serialNumbers = batch.stream().map(PendingDevice::serialNumber).toList();
+        Map<String, Passport> passports = passportService.findPassportsBySerialIds(serialNumbers);
+        Set<String> existing = new HashSet<>(deviceRepository.findExistingSerialNumbers(serialNumbers));
+
+        List<PendingDevice> accepted = new ArrayList<>(batch.size());
+        for (PendingDevice device : batch) {
+            Passport passport = passports.get(device.serialNumber());
+            if (passport == null) {
+                errors.add(new ImportRowErrorVO(device.line(), "Invalid serial number"));
+            } else if (!existing.add(device.serialNumber())) {
+                errors.add(new ImportRowErrorVO(device.line(), "Device already registered"));
+            } else {
+                accepted.add(device.withPassport(passport));
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_DEVICE, accepted.stream().map(PendingDevice::toParameters).toList());
+                warrantyScanService.enqueue(accepted.stream().collect(Collectors.toMap(
+                        PendingDevice::serialNumber,
+                        PendingDevice::warrantyExpirationDate
+                )));
+            });
+            progress.registered += accepted.size();
+        } catch (DataAccessException e) {
+            accepted.forEach(device -> errors.add(new ImportRowErrorVO(device.line(), "Failed to store device")));
+            if (progress.failedBatch == null) {
+                progress.failedBatch = batchIndex;
+            }
+        }
+
+        sample.stop(meterRegistry.timer("devices.import.batch"));
+        batch.clear();
+    }
+
+    // Batches are completed only up to the first one that rolled back, so re-sending with fromBatch = completedBatches
+    // starts at that batch.
+    private static final class ImportProgress {
+        private int registered;
+        private Long failedBatch;
+    }
+
+    private record PendingDevice(long line, String serialNumber, LocalDate purchaseDate, Passport passport) {
+        Object[] toParameters() {
+            return new Object[]{
+                    serialNumber,
+                    Date.valueOf(purchaseDate),
+                    Date.valueOf(warrantyExpirationDate()),
+                    passport.getId(),
+                    Device.searchDocumentOf(serialNumber, null, passport)
+            };
+        }
+
+        PendingDevice withPassport(Passport passport) {
+            return new PendingDevice(line, serialNumber, purchaseDate, passport);
+        }
+
+        LocalDate warrantyExpirationDate() {
+            return purchaseDate.plusMonths(passport.getWarrantyMonths());
+        }
+    }
+}
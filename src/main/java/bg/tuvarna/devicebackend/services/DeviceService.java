@@ -1,73 +1,129 @@
 package bg.tuvarna.devicebackend.services;
 
+import bg.tuvarna.devicebackend.config.ReplicaStickiness;
 import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
 import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
 import bg.tuvarna.devicebackend.models.dtos.DeviceCreateVO;
+import bg.tuvarna.devicebackend.models.dtos.DeviceListing;
 import bg.tuvarna.devicebackend.models.dtos.DeviceUpdateVO;
+import bg.tuvarna.devicebackend.models.dtos.DeviceVO;
+import bg.tuvarna.devicebackend.models.dtos.RenovationVO;
 import bg.tuvarna.devicebackend.models.entities.Device;
 import bg.tuvarna.devicebackend.models.entities.Passport;
 import bg.tuvarna.devicebackend.models.entities.User;
 import bg.tuvarna.devicebackend.repositories.DeviceRepository;
+import bg.tuvarna.devicebackend.repositories.RenovationRepository;
+import bg.tuvarna.devicebackend.repositories.UserRepository;
+import bg.tuvarna.devicebackend.utils.Constraints;
 import bg.tuvarna.devicebackend.utils.CustomPage;
-import jakarta.transaction.Transactional;
-import lombok.AllArgsConstructor;
+import bg.tuvarna.devicebackend.utils.EntityTags;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class DeviceService {
     private final DeviceRepository deviceRepository;
     private final PassportService passportService;
+    private final UserRepository userRepository;
+    private final RenovationRepository renovationRepository;
+    private final MeterRegistry meterRegistry;
+    private final ReplicaStickiness replicaStickiness;
+    private final WarrantyScanService warrantyScanService;
 
     public Device registerDevice(String serialId, LocalDate purchaseDate, User user) {
-        try {
-            Passport passport = passportService.findPassportBySerialId(serialId);
-
-            Device device = new Device();
-            device.setSerialNumber(serialId);
-            device.setPassport(passport);
-            device.setUser(user);
-            device.setPurchaseDate(purchaseDate);
-            device.setWarrantyExpirationDate(purchaseDate.plusMonths(passport.getWarrantyMonths()).plusMonths(12));
-
-            return deviceRepository.save(device);
-        } catch (RuntimeException e) {
-            throw new CustomException("Invalid serial number", ErrorCode.Failed);
-        }
+        Passport passport = passportFor(serialId);
+
+        Device device = new Device();
+        device.setSerialNumber(serialId);
+        device.setPassport(passport);
+        device.setUser(user);
+        device.setPurchaseDate(purchaseDate);
+        device.setWarrantyExpirationDate(purchaseDate.plusMonths(passport.getWarrantyMonths()).plusMonths(12));
+
+        Device saved = insert(device);
+        meterRegistry.counter("devices.registered", "owner", "user").increment();
+        replicaStickiness.markWritten(user.getId());
+        return saved;
     }
 
     public Device findDevice(String id) {
         return deviceRepository.findById(id).orElse(null);
     }
 
+    @Transactional(readOnly = true)
     public Device isDeviceExists(String id) {
         if (!deviceRepository.existsById(id))
             throw new CustomException("Device not registered", ErrorCode.NotRegistered);
         return findDevice(id);
     }
 
+    @Transactional
     public Device registerNewDevice(DeviceCreateVO deviceCreateVO, User user) {
-        alreadyExist(deviceCreateVO.deviceSerialNumber());
-
         if (user == null) {
             throw new CustomException("User not found", ErrorCode.EntityNotFound);
         }
 
-        return registerDevice(deviceCreateVO.deviceSerialNumber(), deviceCreateVO.purchaseDate(), user);
+        User owner = userRepository.findById(user.getId())
+                .orElseThrow(() -> new CustomException("User not found", ErrorCode.EntityNotFound));
+
+        return registerDevice(deviceCreateVO.deviceSerialNumber(), deviceCreateVO.purchaseDate(), owner);
     }
 
-    public void alreadyExist(String serialNumber) {
-        if (findDevice(serialNumber) != null)
-            throw new CustomException("Device already registered", ErrorCode.AlreadyExists);
+    private Passport passportFor(String serialId) {
+        try {
+            return passportService.findPassportBySerialId(serialId);
+        } catch (RuntimeException e) {
+            throw new CustomException("Invalid serial number", ErrorCode.Failed);
+        }
+    }
+
+    /**
+     * Registration is a single insert: the primary key on the serial number rejects a device that is already
+     * registered, so there is no read before the write and two concurrent registrations cannot both succeed.
+     */
+    private Device insert(Device device) {
+        try {
+            Device saved = deviceRepository.saveAndFlush(device);
+            warrantyScanService.enqueue(Map.of(saved.getSerialNumber(), saved.getWarrantyExpirationDate()));
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            if (Constraints.violatesPrimaryKey(e, Device.TABLE)) {
+                throw new CustomException("Device already registered", ErrorCode.AlreadyExists);
+            }
+            throw e;
+        }
     }
 
-    public Device updateDevice(String serialNumber, DeviceUpdateVO device) {
+    /**
+     * Applies an edit and recomputes the warranty date. With {@code ifMatch} the edit is only applied while the device
+     * still has one of the tags the client saw, otherwise it fails with {@link ErrorCode#PreconditionFailed}.
+     * Without it, an edit that loses a race with a concurrent write is not re-applied, since that would overwrite
+     * the concurrent change; the {@link OptimisticLockingFailureException} is answered with a conflict instead.
+     */
+    public Device updateDevice(String serialNumber, DeviceUpdateVO device, String ifMatch) {
         Device deviceToUpdate = deviceRepository.findById(serialNumber).orElseThrow(() -> new CustomException("Device not found", ErrorCode.EntityNotFound));
 
+        if (ifMatch != null && !EntityTags.matches(
+                ifMatch,
+                DeviceVO.entityTag(deviceToUpdate, true, false),
+                DeviceVO.entityTag(deviceToUpdate, true, true)
+        )) {
+            throw new CustomException("Device was modified", ErrorCode.PreconditionFailed);
+        }
+
         deviceToUpdate.setPurchaseDate(device.purchaseDate());
 
         LocalDate warrantyDate = device.purchaseDate().plusMonths(deviceToUpdate.getPassport().getWarrantyMonths());
@@ -77,10 +133,26 @@ public class DeviceService {
             warrantyDate = warrantyDate.plusMonths(12);
         }
 
+        boolean warrantyChanged = !warrantyDate.equals(deviceToUpdate.getWarrantyExpirationDate());
         deviceToUpdate.setWarrantyExpirationDate(warrantyDate);
         deviceToUpdate.setComment(device.comment());
 
-        return deviceRepository.save(deviceToUpdate);
+        try {
+            Device saved = deviceRepository.save(deviceToUpdate);
+            if (warrantyChanged) {
+                warrantyScanService.enqueue(Map.of(saved.getSerialNumber(), saved.getWarrantyExpirationDate()));
+            }
+            return saved;
+        } catch (OptimisticLockingFailureException e) {
+            if (ifMatch == null) {
+                throw e;
+            }
+            throw new CustomException("Device was modified", ErrorCode.PreconditionFailed);
+        }
+    }
+
+    public void refreshSearchDocumentsOfUser(Long userId) {
+        deviceRepository.refreshSearchDocumentsByUser(userId);
     }
 
     @Transactional
@@ -93,32 +165,30 @@ public class DeviceService {
     }
 
     public Device addAnonymousDevice(DeviceCreateVO device) {
-        alreadyExist(device.deviceSerialNumber());
-        try {
-            Passport passport = passportService.findPassportBySerialId(device.deviceSerialNumber());
+        Passport passport = passportFor(device.deviceSerialNumber());
 
-            Device deviceToAdd = new Device();
-            deviceToAdd.setSerialNumber(device.deviceSerialNumber());
-            deviceToAdd.setPurchaseDate(device.purchaseDate());
-            deviceToAdd.setPassport(passport);
-            deviceToAdd.setWarrantyExpirationDate(device.purchaseDate().plusMonths(passport.getWarrantyMonths()));
+        Device deviceToAdd = new Device();
+        deviceToAdd.setSerialNumber(device.deviceSerialNumber());
+        deviceToAdd.setPurchaseDate(device.purchaseDate());
+        deviceToAdd.setPassport(passport);
+        deviceToAdd.setWarrantyExpirationDate(device.purchaseDate().plusMonths(passport.getWarrantyMonths()));
 
-            return deviceRepository.save(deviceToAdd);
-        } catch (RuntimeException e) {
-            throw new CustomException("Invalid serial number", ErrorCode.Failed);
-        }
+        Device saved = insert(deviceToAdd);
+        meterRegistry.counter("devices.registered", "owner", "anonymous").increment();
+        return saved;
     }
 
-    public CustomPage<Device> getDevices(String searchBy, int page, int size) {
-        Page<Device> devicePage;
+    @Transactional(readOnly = true)
+    public CustomPage<DeviceListing> getDevices(String searchBy, int page, int size) {
+        Page<DeviceListing> devicePage;
         if (searchBy == null) {
-            devicePage = deviceRepository.getAllDevices(PageRequest.of(page - 1, size));
+            devicePage = deviceRepository.findAllListings(PageRequest.of(page - 1, size));
         } else {
-            devicePage = deviceRepository.findAll(searchBy, PageRequest.of(page - 1, size));
+            devicePage = deviceRepository.searchListings(searchBy, PageRequest.of(page - 1, size));
         }
 
-        CustomPage<Device> customPage = new CustomPage<>();
-        customPage.setItems(devicePage.getContent());
+        CustomPage<DeviceListing> customPage = new CustomPage<>();
+        customPage.setItems(withRenovations(devicePage.getContent()));
         customPage.setTotalItems(devicePage.getTotalElements());
         customPage.setTotalPages(devicePage.getTotalPages());
         customPage.setCurrentPage(page);
@@ -126,4 +196,59 @@ public class DeviceService {
 
         return customPage;
     }
-}
\ No newline at end of file
+
+    @Transactional(readOnly = true)
+    public CustomPage<DeviceListing> getDevices(String searchBy, String after, int size, boolean includeTotal) {
+        List<DeviceListing> devices;
+        if (searchBy == null) {
+            devices = deviceRepository.findListingsAfter(after, CustomPage.cursorLimit(size));
+        } else {
+            devices = deviceRepository.searchListingsAfter(searchBy, after, CustomPage.cursorLimit(size));
+        }
+
+        Long totalItems = null;
+        if (includeTotal) {
+            totalItems = searchBy == null ? deviceRepository.count() : deviceRepository.countAll(searchBy);
+        }
+
+        CustomPage<DeviceListing> customPage = CustomPage.ofCursor(devices, size, DeviceListing::serialNumber, totalItems);
+        customPage.setItems(withRenovations(customPage.getItems()));
+
+        return customPage;
+    }
+
+    /**
+     * Listings of the devices owned by the given users, optionally only those whose serial number contains {@code serialNumberFilter}.
+     */
+    @Transactional(readOnly = true)
+    public List<DeviceListing> getDeviceListingsOfUsers(Collection<Long> userIds, String serialNumberFilter) {
+        if (userIds.isEmpty()) {
+            return List.of();
+        }
+
+        return withRenovations(deviceRepository.findListingsByUserIds(userIds).stream()
+                .filter(device -> serialNumberFilter == null || device.serialNumber().contains(serialNumberFilter))
+                .toList());
+    }
+
+    private List<DeviceListing> withRenovations(List<DeviceListing> devices) {
+        if (devices.isEmpty()) {
+            return devices;
+        }
+
+        Map<String, RenovationRepository.LatestRenovationRow> latest = renovationRepository
+                .findLatestBySerialNumbers(devices.stream().map(DeviceListing::serialNumber).toList())
+                .stream()
+                .collect(Collectors.toMap(RenovationRepository.LatestRenovationRow::getSerialNumber, row -> row));
+
+        return devices.stream()
+                .map(device -> {
+                    RenovationRepository.LatestRenovationRow row = latest.get(device.serialNumber());
+                    return row == null ? device : device.withRenovations(
+                            row.getRenovationCount(),
+                            new RenovationVO(row.getId(), row.getDescription(), row.getRenovationDate(), null)
+                    );
+                })
+                .toList();
+    }
+}
@@ -0,0 +1,273 @@
+package bg.tuvarna.devicebackend.services;
+
+import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
+import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
+import bg.tuvarna.devicebackend.models.enums.ExportFormat;
+import bg.tuvarna.devicebackend.utils.Csv;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams devices and users as NDJSON or CSV straight from a forward-only JDBC cursor.
+ * Rows are fetched {@code export.fetch-size} at a time inside a read-only transaction (PostgreSQL only honours the
+ * fetch size without auto-commit) and written as they arrive, so memory use does not grow with the size of the export.
+ * Joined renovations come ordered by device, so in NDJSON they are nested into their device without buffering more than one device.
+ */
+@Service
+@RequiredArgsConstructor
+public class ExportService {
+    public static final Set<String> DEVICE_INCLUDES = Set.of("user", "passport", "renovations");
+
+    private static final List<Column> DEVICE_COLUMNS = List.of(
+            new Column(null, "serialNumber", "serialNumber", "d.serial_number"),
+            new Column(null, "purchaseDate", "purchaseDate", "d.purchase_date"),
+            new Column(null, "warrantyExpirationDate", "warrantyExpirationDate", "d.warranty_expiration_date"),
+            new Column(null, "comment", "comment", "d.comment"),
+            new Column("user", "id", "userId", "u.id"),
+            new Column("user", "fullName", "userFullName", "u.full_name"),
+            new Column("user", "email", "userEmail", "u.email"),
+            new Column("user", "phone", "userPhone", "u.phone"),
+            new Column("passport", "id", "passportId", "p.id"),
+            new Column("passport", "name", "passportName", "p.name"),
+            new Column("passport", "model", "passportModel", "p.model"),
+            new Column("passport", "warrantyMonths", "passportWarrantyMonths", "p.warranty_months"),
+            new Column("renovations", "id", "renovationId", "r.id"),
+            new Column("renovations", "description", "renovationDescription", "r.description"),
+            new Column("renovations", "renovationDate", "renovationDate", "r.renovation_date")
+    );
+
+    private static final List<Column> USER_COLUMNS = List.of(
+            new Column(null, "id", "id", "u.id"),
+            new Column(null, "fullName", "fullName", "u.full_name"),
+            new Column(null, "email", "email", "u.email"),
+            new Column(null, "phone", "phone", "u.phone"),
+            new Column(null, "address", "address", "u.address"),
+            new Column(null, "deviceCount", "deviceCount", "(select count(*) from devices d where d.user_id = u.id)")
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${export.fetch-size:1000}")
+    private int fetchSize;
+
+    @Transactional(readOnly = true)
+    public void exportDevices(OutputStream out, ExportFormat format, Set<String> include, boolean gzip) throws IOException {
+        requireDeviceIncludes(include);
+
+        List<Column> columns = DEVICE_COLUMNS.stream()
+                .filter(column -> column.group() == null || include.contains(column.group()))
+                .toList();
+
+        StringBuilder sql = new StringBuilder("select ")
+                .append(columns.stream().map(Column::sql).collect(Collectors.joining(", ")))
+                .append(" from devices d");
+        if (include.contains("user")) {
+            sql.append(" left join users u on u.id = d.user_id");
+        }
+        if (include.contains("passport")) {
+            sql.append(" left join passports p on p.id = d.passport_id");
+        }
+        if (include.contains("renovations")) {
+            sql.append(" left join renovations r on r.device_serial_number = d.serial_number")
+                    .append(" order by d.serial_number, r.renovation_date, r.id");
+        } else {
+            sql.append(" order by d.serial_number");
+        }
+
+        export(out, format, gzip, sql.toString(), columns);
+    }
+
+    @Transactional(readOnly = true)
+    public void exportUsers(OutputStream out, ExportFormat format, boolean gzip) throws IOException {
+        String sql = "select " + USER_COLUMNS.stream().map(Column::sql).collect(Collectors.joining(", ")) +
+                " from users u where u.role <> 'ADMIN' order by u.id";
+
+        export(out, format, gzip, sql, USER_COLUMNS);
+    }
+
+    public static void requireDeviceIncludes(Set<String> include) {
+        for (String group : include) {
+            if (!DEVICE_INCLUDES.contains(group)) {
+                throw new CustomException("Unsupported include: " + group, ErrorCode.Validation);
+            }
+        }
+    }
+
+    public static HttpHeaders headers(String name, ExportFormat format, boolean gzip) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, format.getMediaType());
+        headers.setContentDisposition(
+                ContentDisposition.attachment().filename(name + "." + format.getExtension()).build()
+        );
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        return headers;
+    }
+
+    public static boolean acceptsGzip(String acceptEncoding) {
+        return acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+    }
+
+    private void export(OutputStream out, ExportFormat format, boolean gzip, String sql, List<Column> columns) throws IOException {
+        OutputStream target = gzip ? new GZIPOutputStream(out, 8192) : new BufferedOutputStream(out, 8192);
+        RecordWriter writer = format == ExportFormat.CSV
+                ? new CsvWriter(target, columns)
+                : new NdjsonWriter(objectMapper.getFactory().createGenerator(target), columns);
+
+        try {
+            jdbcTemplate.query(
+                    connection -> {
+                        PreparedStatement statement = connection.prepareStatement(
+                                sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+                        );
+                        statement.setFetchSize(fetchSize);
+                        return statement;
+                    },
+                    (RowCallbackHandler) resultSet -> {
+                        try {
+                            writer.write(resultSet);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+            );
+            writer.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (target instanceof GZIPOutputStream gzipStream) {
+            gzipStream.finish();
+        }
+        target.flush();
+    }
+
+    private static Object value(ResultSet resultSet, int index) throws SQLException {
+        Object value = resultSet.getObject(index);
+        return value instanceof Date date ? date.toLocalDate() : value;
+    }
+
+    private record Column(String group, String field, String header, String sql) {
+    }
+
+    private interface RecordWriter {
+        void write(ResultSet resultSet) throws SQLException, IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class CsvWriter implements RecordWriter {
+        private final Writer writer;
+        private final List<Column> columns;
+
+        private CsvWriter(OutputStream out, List<Column> columns) throws IOException {
+            this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            this.columns = columns;
+
+            writer.write(columns.stream().map(Column::header).collect(Collectors.joining(",")));
+            writer.write('\n');
+        }
+
+        @Override
+        public void write(ResultSet resultSet) throws SQLException, IOException {
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(Csv.escape(value(resultSet, i + 1)));
+            }
+            writer.write('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Writes one JSON object per line, with the user and passport columns nested as objects and consecutive
+     * rows of the same record merged into its {@code renovations} array.
+     */
+    private static final class NdjsonWriter implements RecordWriter {
+        private final JsonGenerator generator;
+        private final List<Column> columns;
+        private Object currentKey;
+        private Map<String, Object> current;
+
+        private NdjsonWriter(JsonGenerator generator, List<Column> columns) {
+            this.generator = generator;
+            this.generator.setRootValueSeparator(null);
+            this.columns = columns;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(ResultSet resultSet) throws SQLException, IOException {
+            Object key = resultSet.getObject(1);
+            if (current == null || !key.equals(currentKey)) {
+                flush();
+                current = new LinkedHashMap<>();
+                currentKey = key;
+            }
+
+            Map<String, Object> renovation = new LinkedHashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                Column column = columns.get(i);
+                Object value = value(resultSet, i + 1);
+
+                if (column.group() == null) {
+                    current.put(column.field(), value);
+                } else if (column.group().equals("renovations")) {
+                    List<Map<String, Object>> renovations =
+                            (List<Map<String, Object>>) current.computeIfAbsent("renovations", g -> new ArrayList<>());
+                    if (column.field().equals("id") && value != null) {
+                        renovations.add(renovation);
+                    }
+                    renovation.put(column.field(), value);
+                } else if (column.field().equals("id")) {
+                    current.put(column.group(), value != null ? new LinkedHashMap<>(Map.of("id", value)) : null);
+                } else if (current.get(column.group()) != null) {
+                    ((Map<String, Object>) current.get(column.group())).put(column.field(), value);
+                }
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            flush();
+            generator.flush();
+        }
+
+        private void flush() throws IOException {
+            if (current == null) {
+                return;
+            }
+
+            generator.writeObject(current);
+            generator.writeRaw('\n');
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package bg.tuvarna.devicebackend.services;
+
+import bg.tuvarna.devicebackend.config.CacheConfig;
+import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
+import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
+import bg.tuvarna.devicebackend.models.dtos.ImportRowErrorVO;
+import bg.tuvarna.devicebackend.models.dtos.PassportCreateVO;
+import bg.tuvarna.devicebackend.models.dtos.PassportImportResultVO;
+import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.repositories.PassportRepository;
+import bg.tuvarna.devicebackend.utils.Csv;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Imports a passport catalog line by line from a CSV or NDJSON stream.
+ * Overlaps are checked against an in-memory set of the ranges already stored plus the ones accepted so far,
+ * and accepted rows are written with batched JDBC inserts. A batch that fails to insert releases its ranges again.
+ */
+@Service
+@RequiredArgsConstructor
+public class PassportImportService {
+    public static final String CSV = "text/csv";
+    public static final String NDJSON = "application/x-ndjson";
+
+    private static final List<String> CSV_COLUMNS = List.of(
+            "name", "model", "serialPrefix", "warrantyMonths", "fromSerialNumber", "toSerialNumber"
+    );
+    private static final String INSERT_PASSPORT = "insert into passports " +
+            "(name, model, serial_prefix, warranty_months, from_serial_number, to_serial_number) " +
+            "values (?, ?, ?, ?, ?, ?)";
+
+    private final PassportRepository passportRepository;
+    private final PassportSerialIndex passportSerialIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    @Value("${passports.import.batch-size:500}")
+    private int batchSize;
+
+    @CacheEvict(cacheNames = CacheConfig.PASSPORT_SERIALS, allEntries = true)
+    public PassportImportResultVO importPassports(InputStream body, String contentType) throws IOException {
+        boolean csv = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(CSV));
+        Map<String, TreeMap<Integer, Integer>> ranges = loadStoredRanges();
+        List<ImportRowErrorVO> errors = new ArrayList<>();
+        List<PendingRow> batch = new ArrayList<>(batchSize);
+        int imported = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            Map<String, Integer> header = csv ? readHeader(reader) : null;
+            long lineNumber = csv ? 1 : 0;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                try {
+                    PassportCreateVO vo = csv ? fromCsv(line, header) : fromJson(line);
+                    validate(vo);
+                    reserve(ranges, vo);
+                    batch.add(new PendingRow(lineNumber, vo));
+                } catch (CustomException e) {
+                    errors.add(new ImportRowErrorVO(lineNumber, e.getMessage()));
+                } catch (JsonProcessingException | NumberFormatException e) {
+                    errors.add(new ImportRowErrorVO(lineNumber, "Malformed row"));
+                }
+
+                if (batch.size() >= batchSize) {
+                    imported += flush(batch, ranges, errors);
+                }
+            }
+        }
+
+        imported += flush(batch, ranges, errors);
+
+        if (imported > 0) {
+            passportSerialIndex.invalidate();
+        }
+
+        return new PassportImportResultVO(imported, errors.size(), errors);
+    }
+
+    private Map<String, TreeMap<Integer, Integer>> loadStoredRanges() {
+        Map<String, TreeMap<Integer, Integer>> ranges = new HashMap<>();
+
+        for (Passport passport : passportRepository.findAll()) {
+            merge(
+                    ranges.computeIfAbsent(passport.getSerialPrefix(), p -> new TreeMap<>()),
+                    passport.getFromSerialNumber(),
+                    passport.getToSerialNumber()
+            );
+        }
+
+        return ranges;
+    }
+
+    private Map<String, Integer> readHeader(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return Map.of();
+        }
+
+        List<String> columns = Csv.parseLine(line);
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            header.put(columns.get(i), i);
+        }
+
+        for (String column : CSV_COLUMNS) {
+            if (!header.containsKey(column)) {
+                throw new CustomException("Missing CSV column: " + column, ErrorCode.Validation, column);
+            }
+        }
+
+        return header;
+    }
+
+    private static PassportCreateVO fromCsv(String line, Map<String, Integer> header) {
+        List<String> fields = Csv.parseLine(line);
+
+        return new PassportCreateVO(
+                field(fields, header, "name"),
+                field(fields, header, "model"),
+                field(fields, header, "serialPrefix"),
+                intField(fields, header, "warrantyMonths"),
+                intField(fields, header, "fromSerialNumber"),
+                intField(fields, header, "toSerialNumber")
+        );
+    }
+
+    // Lines such as null or 42 are valid JSON but no passport, so they are reported like any other malformed row.
+    private PassportCreateVO fromJson(String line) throws JsonProcessingException {
+        JsonNode node = objectMapper.readTree(line);
+        if (node == null || !node.isObject()) {
+            throw new CustomException("Malformed row", ErrorCode.Validation);
+        }
+
+        return objectMapper.treeToValue(node, PassportCreateVO.class);
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> header, String column) {
+        int index = header.get(column);
+        return index < fields.size() && !fields.get(index).isEmpty() ? fields.get(index) : null;
+    }
+
+    private static Integer intField(List<String> fields, Map<String, Integer> header, String column) {
+        String value = field(fields, header, column);
+        return value != null ? Integer.valueOf(value) : null;
+    }
+
+    private void validate(PassportCreateVO vo) {
+        Set<ConstraintViolation<PassportCreateVO>> violations = validator.validate(vo);
+        if (!violations.isEmpty()) {
+            throw new CustomException(
+                    violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining("; ")),
+                    ErrorCode.Validation
+            );
+        }
+
+        if (vo.fromSerialNumber() > vo.toSerialNumber()) {
+            throw new CustomException("From serial number is greater than to serial number", ErrorCode.Validation);
+        }
+    }
+
+    private static void reserve(Map<String, TreeMap<Integer, Integer>> ranges, PassportCreateVO vo) {
+        TreeMap<Integer, Integer> prefixRanges = ranges.computeIfAbsent(vo.serialPrefix(), p -> new TreeMap<>());
+
+        Map.Entry<Integer, Integer> floor = prefixRanges.floorEntry(vo.toSerialNumber());
+        if (floor != null && floor.getValue() >= vo.fromSerialNumber()) {
+            throw new CustomException("Serial number already exists", ErrorCode.AlreadyExists);
+        }
+
+        prefixRanges.put(vo.fromSerialNumber(), vo.toSerialNumber());
+    }
+
+    // Reserved ranges are never merged, so a row that was not stored frees exactly the entry it reserved.
+    private static void release(Map<String, TreeMap<Integer, Integer>> ranges, PassportCreateVO vo) {
+        ranges.get(vo.serialPrefix()).remove(vo.fromSerialNumber());
+    }
+
+    // Keeps the ranges of one prefix disjoint so a floor lookup is enough to detect any overlap.
+    private static void merge(TreeMap<Integer, Integer> ranges, int from, int to) {
+        int start = from;
+        int end = to;
+
+        Map.Entry<Integer, Integer> floor = ranges.floorEntry(to);
+        while (floor != null && floor.getValue() >= start) {
+            start = Math.min(start, floor.getKey());
+            end = Math.max(end, floor.getValue());
+            ranges.remove(floor.getKey());
+            floor = ranges.floorEntry(to);
+        }
+
+        ranges.put(start, end);
+    }
+
+    private int flush(List<PendingRow> batch, Map<String, TreeMap<Integer, Integer>> ranges, List<ImportRowErrorVO> errors) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        List<Object[]> rows = batch.stream().map(PendingRow::toParameters).toList();
+        int flushed = batch.size();
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_PASSPORT, rows));
+        } catch (DataAccessException e) {
+            for (PendingRow row : batch) {
+                release(ranges, row.vo());
+                errors.add(new ImportRowErrorVO(row.line(), "Failed to store passport"));
+            }
+            flushed = 0;
+        }
+
+        batch.clear();
+        return flushed;
+    }
+
+    private record PendingRow(long line, PassportCreateVO vo) {
+        Object[] toParameters() {
+            return new Object[]{
+                    vo.name(), vo.model(), vo.serialPrefix(), vo.warrantyMonths(), vo.fromSerialNumber(), vo.toSerialNumber()
+            };
+        }
+    }
+}
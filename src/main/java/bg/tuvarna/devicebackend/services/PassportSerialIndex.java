@@ -0,0 +1,195 @@
+package bg.tuvarna.devicebackend.services;
+
+import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.repositories.PassportRepository;
+import bg.tuvarna.devicebackend.utils.SortedIntervals;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory view of all passports used to resolve a device serial number without a database trip.
+ * Serial prefixes are kept in a trie and every trie node holds the sorted serial ranges of its passports,
+ * so a lookup costs O(prefix length + log n). The index is loaded lazily and kept up to date by
+ * {@link bg.tuvarna.devicebackend.models.listeners.PassportIndexListener} after each committed write.
+ * Writers use a {@link ReentrantLock} rather than {@code synchronized}, since loading blocks on JDBC and must not pin a virtual thread.
+ */
+@Component
+@RequiredArgsConstructor
+public class PassportSerialIndex {
+    private final PassportRepository passportRepository;
+    private final Map<Long, Passport> passportsById = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Node root = new Node();
+    private volatile boolean loaded;
+
+    public Passport find(String serialId) {
+        if (serialId == null) {
+            return null;
+        }
+
+        ensureLoaded();
+
+        Deque<Integer> prefixLengths = new ArrayDeque<>();
+        Deque<Node> prefixNodes = new ArrayDeque<>();
+        Node node = root;
+
+        for (int i = 0; i < serialId.length(); i++) {
+            node = node.children.get(serialId.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (!node.passports.isEmpty()) {
+                prefixLengths.push(i + 1);
+                prefixNodes.push(node);
+            }
+        }
+
+        while (!prefixNodes.isEmpty()) {
+            Node candidate = prefixNodes.pop();
+            Integer serialNumber = parseSerialNumber(serialId, prefixLengths.pop());
+            Passport passport = serialNumber != null ? candidate.passports.find(serialNumber) : null;
+            if (passport != null) {
+                return passport;
+            }
+        }
+
+        return null;
+    }
+
+    public void put(Passport passport) {
+        lock.lock();
+        try {
+            if (!loaded || passport.getId() == null) {
+                return;
+            }
+
+            unindex(passport.getId());
+            index(copyOf(passport));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.lock();
+        try {
+            unindex(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate() {
+        lock.lock();
+        try {
+            passportsById.clear();
+            root = new Node();
+            loaded = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static boolean covers(Passport passport, String serialId) {
+        if (passport.getSerialPrefix() == null || !serialId.startsWith(passport.getSerialPrefix())) {
+            return false;
+        }
+
+        Integer serialNumber = parseSerialNumber(serialId, passport.getSerialPrefix().length());
+        return serialNumber != null
+                && serialNumber >= passport.getFromSerialNumber()
+                && serialNumber <= passport.getToSerialNumber();
+    }
+
+    /**
+     * Prefixes a passport covering {@code serialId} may have: every non-empty prefix followed by a serial number.
+     */
+    public static List<String> candidatePrefixes(String serialId) {
+        List<String> prefixes = new ArrayList<>();
+        for (int i = 1; i < serialId.length(); i++) {
+            if (parseSerialNumber(serialId, i) != null) {
+                prefixes.add(serialId.substring(0, i));
+            }
+        }
+        return prefixes;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (!loaded) {
+                passportRepository.findAll().forEach(p -> index(copyOf(p)));
+                loaded = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void index(Passport passport) {
+        if (passport.getSerialPrefix() == null || passport.getSerialPrefix().isEmpty()) {
+            return;
+        }
+
+        passportsById.put(passport.getId(), passport);
+
+        Node node = nodeFor(passport.getSerialPrefix());
+        node.passports = node.passports.with(passport.getFromSerialNumber(), passport.getToSerialNumber(), passport);
+    }
+
+    private void unindex(Long id) {
+        Passport indexed = passportsById.remove(id);
+        if (indexed == null) {
+            return;
+        }
+
+        Node node = nodeFor(indexed.getSerialPrefix());
+        node.passports = node.passports.without(p -> p == indexed);
+    }
+
+    private Node nodeFor(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+        }
+        return node;
+    }
+
+    private static Integer parseSerialNumber(String serialId, int prefixLength) {
+        try {
+            return Integer.parseInt(serialId.substring(prefixLength));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Passport copyOf(Passport passport) {
+        return Passport.builder()
+                .id(passport.getId())
+                .name(passport.getName())
+                .model(passport.getModel())
+                .serialPrefix(passport.getSerialPrefix())
+                .fromSerialNumber(passport.getFromSerialNumber())
+                .toSerialNumber(passport.getToSerialNumber())
+                .warrantyMonths(passport.getWarrantyMonths())
+                .build();
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new ConcurrentHashMap<>();
+        private volatile SortedIntervals<Passport> passports = SortedIntervals.empty();
+    }
+}
@@ -1,26 +1,44 @@
 package bg.tuvarna.devicebackend.services;
 
+import bg.tuvarna.devicebackend.config.CacheConfig;
 import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
 import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
 import bg.tuvarna.devicebackend.models.dtos.PassportCreateVO;
 import bg.tuvarna.devicebackend.models.dtos.PassportUpdateVO;
+import bg.tuvarna.devicebackend.models.dtos.WarrantyRecomputeVO;
 import bg.tuvarna.devicebackend.models.entities.Passport;
 import bg.tuvarna.devicebackend.models.mappers.PassportMapper;
+import bg.tuvarna.devicebackend.repositories.DeviceRepository;
 import bg.tuvarna.devicebackend.repositories.PassportRepository;
 import bg.tuvarna.devicebackend.utils.CustomPage;
+import io.micrometer.core.annotation.Timed;
 import lombok.AllArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 @Service
 @AllArgsConstructor
 public class PassportService {
     private final PassportRepository passportRepository;
+    private final PassportSerialIndex passportSerialIndex;
+    private final DeviceRepository deviceRepository;
+    private final WarrantyRecomputeService warrantyRecomputeService;
 
+    @CacheEvict(cacheNames = CacheConfig.PASSPORT_SERIALS, allEntries = true)
     public Passport create(PassportCreateVO passportCreateVO) {
         List<Passport> passports = passportRepository.findByFromSerialNumberBetween(passportCreateVO.serialPrefix(), passportCreateVO.fromSerialNumber(), passportCreateVO.toSerialNumber());
         if (!passports.isEmpty()) {
@@ -32,6 +50,10 @@ public class PassportService {
         return passportRepository.save(passport);
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PASSPORTS, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.PASSPORT_SERIALS, allEntries = true)
+    })
     public Passport update(Long id, PassportUpdateVO passportUpdateVO) {
         Passport passport = findPassportById(id);
 
@@ -48,26 +70,49 @@ public class PassportService {
             throw new CustomException("Serial number already exists", ErrorCode.AlreadyExists);
         }
 
+        String name = passport.getName();
+        String model = passport.getModel();
+        int warrantyMonths = passport.getWarrantyMonths();
+
         PassportMapper.updateEntity(passport, passportUpdateVO);
 
-        return passportRepository.save(passport);
+        Passport saved = passportRepository.save(passport);
+        if (!Objects.equals(name, saved.getName()) || !Objects.equals(model, saved.getModel())) {
+            deviceRepository.refreshSearchDocumentsByPassport(saved.getId());
+        }
+        if (warrantyMonths != saved.getWarrantyMonths()) {
+            warrantyRecomputeService.start(saved.getId(), saved.getWarrantyMonths());
+        }
+
+        return saved;
+    }
+
+    public WarrantyRecomputeVO recomputeWarranties(Long id) {
+        Passport passport = findPassportById(id);
+        if (passport == null) {
+            throw new CustomException("Passport not found", ErrorCode.EntityNotFound);
+        }
+
+        return warrantyRecomputeService.start(passport.getId(), passport.getWarrantyMonths());
     }
 
+    @Cacheable(cacheNames = CacheConfig.PASSPORTS, unless = "#result == null")
     public Passport findPassportById(Long id) {
         return passportRepository.findById(id).orElse(null);
     }
 
+    @Timed("passports.resolve")
+    @Cacheable(CacheConfig.PASSPORT_SERIALS)
+    @Transactional(readOnly = true)
     public Passport findPassportBySerialId(String serialId) {
-        List<Passport> passports = getPassportsBySerialPrefix(serialId);
-        
-        for (Passport passport : passports) {
-            int serialNumber;
-            try {
-                serialNumber = Integer.parseInt(serialId.split(passport.getSerialPrefix())[1]);
-            } catch (NumberFormatException e) {
-                continue;
-            }
-            if (serialNumber >= passport.getFromSerialNumber() && serialNumber <= passport.getToSerialNumber()) {
+        Passport indexed = passportSerialIndex.find(serialId);
+        if (indexed != null) {
+            return indexed;
+        }
+
+        for (Passport passport : getPassportsBySerialPrefix(serialId)) {
+            if (PassportSerialIndex.covers(passport, serialId)) {
+                passportSerialIndex.put(passport);
                 return passport;
             }
         }
@@ -75,6 +120,50 @@ public class PassportService {
         throw new CustomException("Passport not found for serial number: " + serialId, ErrorCode.Failed);
     }
 
+    /**
+     * Bulk form of {@link #findPassportBySerialId}: serial numbers the index does not resolve are looked up with one
+     * query over their candidate prefixes, preferring the longest matching prefix like the index does.
+     * Serial numbers without a passport are left out of the result.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Passport> findPassportsBySerialIds(Collection<String> serialIds) {
+        Map<String, Passport> passports = new HashMap<>();
+        Set<String> prefixes = new HashSet<>();
+
+        for (String serialId : serialIds) {
+            Passport indexed = passportSerialIndex.find(serialId);
+            if (indexed != null) {
+                passports.put(serialId, indexed);
+            } else {
+                prefixes.addAll(PassportSerialIndex.candidatePrefixes(serialId));
+            }
+        }
+
+        if (prefixes.isEmpty()) {
+            return passports;
+        }
+
+        List<Passport> candidates = passportRepository.findBySerialPrefixIn(prefixes).stream()
+                .sorted(Comparator.comparingInt((Passport p) -> p.getSerialPrefix().length()).reversed())
+                .toList();
+        for (String serialId : serialIds) {
+            if (passports.containsKey(serialId)) {
+                continue;
+            }
+
+            candidates.stream()
+                    .filter(passport -> PassportSerialIndex.covers(passport, serialId))
+                    .findFirst()
+                    .ifPresent(passport -> {
+                        passportSerialIndex.put(passport);
+                        passports.put(serialId, passport);
+                    });
+        }
+
+        return passports;
+    }
+
+    @Transactional(readOnly = true)
     public CustomPage<Passport> getPassports(int page, int size) {
         Page<Passport> passports = passportRepository.findAll(PageRequest.of(page - 1, size));
 
@@ -88,10 +177,21 @@ public class PassportService {
         return customPage;
     }
 
+    @Transactional(readOnly = true)
+    public CustomPage<Passport> getPassports(String after, int size, boolean includeTotal) {
+        List<Passport> passports = passportRepository.findAllAfter(CustomPage.idCursor(after), CustomPage.cursorLimit(size));
+
+        return CustomPage.ofCursor(passports, size, Passport::getId, includeTotal ? passportRepository.count() : null);
+    }
+
     public List<Passport> getPassportsBySerialPrefix(String serialId) {
         return passportRepository.findByFromSerial(serialId);
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PASSPORTS, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.PASSPORT_SERIALS, allEntries = true)
+    })
     public void delete(Long id) {
         try {
             passportRepository.deleteById(id);
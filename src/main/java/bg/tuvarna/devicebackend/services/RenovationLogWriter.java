@@ -0,0 +1,223 @@
+package bg.tuvarna.devicebackend.services;
+
+import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
+import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Appends renovations through a single writer thread that group-commits them: queued rows are collected until
+ * {@code renovations.log.batch-size} rows are waiting or {@code renovations.log.flush-interval} has passed since
+ * the first one, then inserted with one batched JDBC statement in one transaction. If a batch fails, its rows are
+ * retried one by one, so a single bad row only fails its own future. When the queue holds
+ * {@code renovations.log.queue-capacity} rows, new appends are rejected with {@link ErrorCode#TooManyRequests}.
+ * A future that is not completed within {@code renovations.log.append-timeout} fails with a {@link TimeoutException},
+ * and rows still queued when the writer stops are rejected, so callers waiting on a future never block forever.
+ */
+@Component
+public class RenovationLogWriter {
+    private static final Logger logger = LoggerFactory.getLogger(RenovationLogWriter.class);
+    private static final String INSERT_RENOVATION = "insert into renovations " +
+            "(device_serial_number, description, renovation_date) values (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Counter createdCounter;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration appendTimeout;
+    private final BlockingQueue<PendingRenovation> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    public RenovationLogWriter(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${renovations.log.batch-size:200}") int batchSize,
+            @Value("${renovations.log.flush-interval:20ms}") Duration flushInterval,
+            @Value("${renovations.log.queue-capacity:10000}") int queueCapacity,
+            @Value("${renovations.log.append-timeout:30s}") Duration appendTimeout
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.createdCounter = meterRegistry.counter("renovations.created");
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.appendTimeout = appendTimeout;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        meterRegistry.gauge("renovations.log.queue.size", queue, BlockingQueue::size);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "renovation-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(flushInterval.multipliedBy(10).toMillis() + 1000);
+
+        List<PendingRenovation> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        leftover.forEach(RenovationLogWriter::reject);
+    }
+
+    /**
+     * Queues a renovation and returns a future completed with its generated id once the batch holding it is committed.
+     */
+    public CompletableFuture<Long> append(String deviceSerialNumber, String description, LocalDate renovationDate) {
+        PendingRenovation pending = new PendingRenovation(deviceSerialNumber, description, renovationDate, new CompletableFuture<>());
+
+        if (!running || !queue.offer(pending)) {
+            meterRegistry.counter("renovations.log.rejected").increment();
+            reject(pending);
+        } else if (!running && queue.remove(pending)) {
+            // stop() began after the check above and may already have drained the queue.
+            reject(pending);
+        }
+
+        return pending.result().orTimeout(appendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static void reject(PendingRenovation pending) {
+        pending.result().completeExceptionally(
+                new CustomException("Too many requests, try again later", ErrorCode.TooManyRequests)
+        );
+    }
+
+    private void run() {
+        List<PendingRenovation> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                queue.drainTo(batch);
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<PendingRenovation> batch) throws InterruptedException {
+        PendingRenovation first = queue.poll(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return;
+        }
+
+        batch.add(first);
+        long deadline = System.nanoTime() + flushInterval.toNanos();
+
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+
+            PendingRenovation next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingRenovation> batch) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        try {
+            List<Long> ids = transactionTemplate.execute(status -> insert(batch));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(ids.get(i));
+            }
+            createdCounter.increment(batch.size());
+        } catch (DataAccessException e) {
+            logger.warn("Renovation batch of {} failed, retrying rows one by one", batch.size(), e);
+            batch.forEach(this::flushOne);
+        } catch (RuntimeException e) {
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        }
+
+        sample.stop(meterRegistry.timer("renovations.log.flush"));
+    }
+
+    private void flushOne(PendingRenovation pending) {
+        try {
+            Long id = transactionTemplate.execute(status -> insert(List.of(pending)).get(0));
+            pending.result().complete(id);
+            createdCounter.increment();
+        } catch (RuntimeException e) {
+            pending.result().completeExceptionally(e);
+        }
+    }
+
+    private List<Long> insert(List<PendingRenovation> rows) {
+        return jdbcTemplate.execute(
+                connection -> connection.prepareStatement(INSERT_RENOVATION, new String[]{"id"}),
+                (PreparedStatement statement) -> {
+                    for (PendingRenovation row : rows) {
+                        statement.setString(1, row.deviceSerialNumber());
+                        statement.setString(2, row.description());
+                        statement.setDate(3, Date.valueOf(row.renovationDate()));
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+
+                    List<Long> ids = new ArrayList<>(rows.size());
+                    try (ResultSet keys = statement.getGeneratedKeys()) {
+                        while (keys.next()) {
+                            ids.add(keys.getLong(1));
+                        }
+                    }
+                    if (ids.size() != rows.size()) {
+                        throw new IllegalStateException("Expected " + rows.size() + " generated ids, got " + ids.size());
+                    }
+                    return ids;
+                }
+        );
+    }
+
+    private record PendingRenovation(
+            String deviceSerialNumber,
+            String description,
+            LocalDate renovationDate,
+            CompletableFuture<Long> result
+    ) {
+    }
+}
@@ -1,18 +1,50 @@
 package bg.tuvarna.devicebackend.services;
 
+import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
+import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
+import bg.tuvarna.devicebackend.models.dtos.RenovationBatchItemVO;
+import bg.tuvarna.devicebackend.models.dtos.RenovationBatchResultVO;
 import bg.tuvarna.devicebackend.models.dtos.RenovationCreateVO;
+import bg.tuvarna.devicebackend.models.dtos.RenovationVO;
 import bg.tuvarna.devicebackend.models.entities.Device;
 import bg.tuvarna.devicebackend.models.entities.Renovation;
+import bg.tuvarna.devicebackend.repositories.DeviceRepository;
 import bg.tuvarna.devicebackend.repositories.RenovationRepository;
-import lombok.AllArgsConstructor;
+import bg.tuvarna.devicebackend.utils.CustomPage;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class RenovationService {
     private final RenovationRepository renovationRepository;
     private final DeviceService deviceService;
+    private final DeviceRepository deviceRepository;
+    private final RenovationLogWriter renovationLogWriter;
+    private final MeterRegistry meterRegistry;
+    private final Validator validator;
+
+    private static final LocalDate EARLIEST = LocalDate.of(1, 1, 1);
+    private static final LocalDate LATEST = LocalDate.of(9999, 12, 31);
+
+    @Value("${renovations.batch.max-items:1000}")
+    private int maxItems;
 
+    @Transactional
     public Renovation save(RenovationCreateVO vo) {
         Device device = deviceService.isDeviceExists(vo.deviceSerialNumber());
 
@@ -21,6 +53,100 @@ public class RenovationService {
         renovation.setDescription(vo.description());
         renovation.setRenovationDate(vo.renovationDate());
 
-        return renovationRepository.save(renovation);
+        Renovation saved = renovationRepository.save(renovation);
+        meterRegistry.counter("renovations.created").increment();
+        return saved;
+    }
+
+    /**
+     * Validates the renovations, checks all their devices with one query and appends the valid ones through
+     * {@link RenovationLogWriter}. Every item gets its own result, so one invalid item does not reject the others.
+     */
+    public RenovationBatchResultVO saveAll(List<RenovationCreateVO> vos) {
+        if (vos.size() > maxItems) {
+            throw new CustomException("At most " + maxItems + " renovations per batch", ErrorCode.Validation);
+        }
+
+        Set<String> registered = new HashSet<>(deviceRepository.findExistingSerialNumbers(
+                vos.stream().filter(Objects::nonNull).map(RenovationCreateVO::deviceSerialNumber).filter(Objects::nonNull).distinct().toList()
+        ));
+
+        String[] errors = new String[vos.size()];
+        List<CompletableFuture<Long>> ids = new ArrayList<>(vos.size());
+
+        for (int i = 0; i < vos.size(); i++) {
+            RenovationCreateVO vo = vos.get(i);
+            errors[i] = validate(vo, registered);
+            ids.add(errors[i] != null
+                    ? CompletableFuture.completedFuture(null)
+                    : renovationLogWriter.append(vo.deviceSerialNumber(), vo.description(), vo.renovationDate()));
+        }
+
+        List<RenovationBatchItemVO> items = new ArrayList<>(vos.size());
+        int created = 0;
+
+        for (int i = 0; i < vos.size(); i++) {
+            Long id = null;
+            try {
+                id = ids.get(i).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof CustomException customException) {
+                    errors[i] = customException.getMessage();
+                } else if (e.getCause() instanceof TimeoutException) {
+                    errors[i] = "Timed out, the renovation may still be stored";
+                } else {
+                    errors[i] = "Failed to store renovation";
+                }
+            }
+
+            if (errors[i] == null) {
+                created++;
+            }
+            items.add(new RenovationBatchItemVO(i, vos.get(i) != null ? vos.get(i).deviceSerialNumber() : null, id, errors[i]));
+        }
+
+        return new RenovationBatchResultVO(created, vos.size() - created, items);
+    }
+
+    /**
+     * Renovations of a device, newest first, optionally limited to {@code renovationDate} between {@code from} and {@code to} inclusive.
+     */
+    @Transactional(readOnly = true)
+    public CustomPage<RenovationVO> getHistory(String serialNumber, LocalDate from, LocalDate to, int page, int size) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new CustomException("From date is after to date", ErrorCode.Validation);
+        }
+        if (!deviceRepository.existsById(serialNumber)) {
+            throw new CustomException("Device not registered", ErrorCode.NotRegistered);
+        }
+
+        Page<Renovation> renovations = renovationRepository.findHistory(
+                serialNumber,
+                from != null ? from : EARLIEST,
+                to != null ? to : LATEST,
+                PageRequest.of(page - 1, size)
+        );
+
+        CustomPage<RenovationVO> customPage = new CustomPage<>();
+        customPage.setItems(renovations.getContent().stream().map(r -> new RenovationVO(r, false)).toList());
+        customPage.setTotalItems(renovations.getTotalElements());
+        customPage.setTotalPages(renovations.getTotalPages());
+        customPage.setCurrentPage(page);
+        customPage.setSize(size);
+
+        return customPage;
+    }
+
+    private String validate(RenovationCreateVO vo, Set<String> registered) {
+        if (vo == null) {
+            return "Renovation is required";
+        }
+
+        Set<ConstraintViolation<RenovationCreateVO>> violations = validator.validate(vo);
+        if (!violations.isEmpty()) {
+            return violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining("; "));
+        }
+
+        return registered.contains(vo.deviceSerialNumber()) ? null : "Device not registered";
     }
-}
\ No newline at end of file
+}
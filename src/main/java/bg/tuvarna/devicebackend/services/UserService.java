@@ -1,55 +1,84 @@
 package bg.tuvarna.devicebackend.services;
 
+import bg.tuvarna.devicebackend.config.CacheConfig;
+import bg.tuvarna.devicebackend.config.JwtService;
+import bg.tuvarna.devicebackend.config.ReplicaStickiness;
 import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
 import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
 import bg.tuvarna.devicebackend.models.dtos.ChangePasswordVO;
+import bg.tuvarna.devicebackend.models.dtos.DeviceListing;
 import bg.tuvarna.devicebackend.models.dtos.UserCreateVO;
 import bg.tuvarna.devicebackend.models.dtos.UserListing;
 import bg.tuvarna.devicebackend.models.dtos.UserUpdateVO;
+import bg.tuvarna.devicebackend.models.dtos.UserVO;
 import bg.tuvarna.devicebackend.models.entities.User;
 import bg.tuvarna.devicebackend.models.enums.UserRole;
 import bg.tuvarna.devicebackend.repositories.UserRepository;
+import bg.tuvarna.devicebackend.utils.Constraints;
 import bg.tuvarna.devicebackend.utils.CustomPage;
-import lombok.AllArgsConstructor;
+import bg.tuvarna.devicebackend.utils.EntityTags;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final DeviceService deviceService;
-
+    private final MeterRegistry meterRegistry;
+    private final ReplicaStickiness replicaStickiness;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Inserts the user and the optional device in one transaction. Taken emails, phones and serial numbers are
+     * rejected by the unique constraints rather than looked up first, and a rejected device rolls the user back.
+     * The password is hashed before the transaction starts so no connection is held while hashing.
+     */
     public void register(UserCreateVO userCreateVO) {
-        if (isEmailTaken(userCreateVO.email())) {
-            throw new CustomException("Email already taken", ErrorCode.AlreadyExists);
-        }
-        if (isPhoneTaken(userCreateVO.phone())) {
-            throw new CustomException("Phone already taken", ErrorCode.AlreadyExists);
-        }
-
         User user = new User(userCreateVO);
-
         user.setPassword(passwordEncoder.encode(userCreateVO.password()));
-        user = userRepository.saveAndFlush(user);
 
-        if (
-                userCreateVO.deviceSerialNumber() == null || userCreateVO.deviceSerialNumber().isBlank()
-                || userCreateVO.purchaseDate() == null
-        ) {
-            return;
-        }
+        boolean withDevice = userCreateVO.deviceSerialNumber() != null && !userCreateVO.deviceSerialNumber().isBlank()
+                && userCreateVO.purchaseDate() != null;
 
+        User saved = transactionTemplate.execute(status -> {
+            User inserted = saveUnique(user, userRepository::saveAndFlush);
+            if (withDevice) {
+                deviceService.registerDevice(userCreateVO.deviceSerialNumber(), userCreateVO.purchaseDate(), inserted);
+            }
+            return inserted;
+        });
+
+        meterRegistry.counter("users.registered").increment();
+        replicaStickiness.markWritten(saved.getId());
+    }
+
+    private static User saveUnique(User user, UnaryOperator<User> save) {
         try {
-            deviceService.alreadyExist(userCreateVO.deviceSerialNumber());
-            deviceService.registerDevice(userCreateVO.deviceSerialNumber(), userCreateVO.purchaseDate(), user);
-        } catch (CustomException e) {
-            userRepository.delete(user);
+            return save.apply(user);
+        } catch (DataIntegrityViolationException e) {
+            if (Constraints.violates(e, User.UNIQUE_EMAIL)) {
+                throw new CustomException("Email already taken", ErrorCode.AlreadyExists);
+            }
+            if (Constraints.violates(e, User.UNIQUE_PHONE)) {
+                throw new CustomException("Phone already taken", ErrorCode.AlreadyExists);
+            }
             throw e;
         }
     }
@@ -68,16 +97,32 @@ public class UserService {
         return userRepository.findById(id).orElseThrow(() -> new CustomException("User not found", ErrorCode.EntityNotFound));
     }
 
+    @Cacheable(CacheConfig.PRINCIPALS)
+    public String getCredentialsFingerprint(Long id) {
+        return userRepository.findPasswordById(id).map(JwtService::credentialsFingerprint).orElse(null);
+    }
+
+    @Transactional(readOnly = true)
+    public UserVO getUserVO(Long id) {
+        return new UserVO(getUserWithDevices(id));
+    }
+
+    @Transactional(readOnly = true)
+    public User getUserWithDevices(Long id) {
+        return userRepository.findWithDevicesById(id).orElseThrow(() -> new CustomException("User not found", ErrorCode.EntityNotFound));
+    }
+
     public User getUserByUsername(String username) {
         return userRepository.findByEmailOrPhone(username).orElseThrow(() -> new CustomException("User not found", ErrorCode.EntityNotFound));
     }
 
+    @Transactional(readOnly = true)
     public CustomPage<UserListing> getUsers(String searchBy, int page, int size) {
-        Page<User> userPage;
+        Page<UserListing> userPage;
         if (searchBy == null) {
-            userPage = userRepository.getAllUsers(PageRequest.of(page - 1, size));
+            userPage = userRepository.findAllListings(PageRequest.of(page - 1, size));
         } else {
-            userPage = userRepository.searchBy(searchBy, PageRequest.of(page - 1, size));
+            userPage = userRepository.searchListings(searchBy, PageRequest.of(page - 1, size));
         }
 
         CustomPage<UserListing> customPage = new CustomPage<>();
@@ -85,31 +130,64 @@ public class UserService {
         customPage.setCurrentPage(userPage.getNumber() + 1);
         customPage.setSize(userPage.getSize());
         customPage.setTotalItems(userPage.getTotalElements());
+        customPage.setItems(withDevices(userPage.getContent(), searchBy));
 
-        customPage.setItems(userPage
-                .stream()
-                .peek(user -> {
-                            if (searchBy != null) {
-                                user.setDevices(user.getDevices().stream().filter(
-                                        device -> device.getSerialNumber().contains(searchBy)
-                                ).collect(Collectors.toList()));
-                            }
-                        }
-                )
-                .map(UserListing::new)
-                .toList()
+        return customPage;
+    }
+
+    @Transactional(readOnly = true)
+    public CustomPage<UserListing> getUsers(String searchBy, String after, int size, boolean includeTotal) {
+        long afterId = CustomPage.idCursor(after);
+        List<UserListing> users;
+        if (searchBy == null) {
+            users = userRepository.findListingsAfter(afterId, CustomPage.cursorLimit(size));
+        } else {
+            users = userRepository.searchListingsAfter(searchBy, afterId, CustomPage.cursorLimit(size));
+        }
+
+        CustomPage<UserListing> customPage = CustomPage.ofCursor(
+                users,
+                size,
+                UserListing::id,
+                includeTotal ? userRepository.countSearchBy(searchBy) : null
         );
+        customPage.setItems(withDevices(customPage.getItems(), searchBy));
 
         return customPage;
     }
 
+    private List<UserListing> withDevices(List<UserListing> users, String searchBy) {
+        Map<Long, List<DeviceListing>> devices = deviceService
+                .getDeviceListingsOfUsers(users.stream().map(UserListing::id).toList(), searchBy)
+                .stream()
+                .collect(Collectors.groupingBy(DeviceListing::userId));
+
+        return users.stream()
+                .map(user -> user.withDevices(devices.getOrDefault(user.id(), List.of())))
+                .toList();
+    }
+
+    @CacheEvict(cacheNames = CacheConfig.PRINCIPALS, key = "#id")
     public User updateUser(Long id, UserUpdateVO userUpdateVO) {
+        return updateUser(id, userUpdateVO, null);
+    }
+
+    /**
+     * Same contract as {@link DeviceService#updateDevice}: {@code ifMatch} makes the edit conditional on the tag
+     * the client saw, and without it a lost race is answered with a conflict rather than overwriting the concurrent change.
+     */
+    @CacheEvict(cacheNames = CacheConfig.PRINCIPALS, key = "#id")
+    public User updateUser(Long id, UserUpdateVO userUpdateVO, String ifMatch) {
         User user = getUserById(id);
 
         if (user.getRole() == UserRole.ADMIN) {
             throw new CustomException("Admin password can't be changed", ErrorCode.Validation);
         }
 
+        if (ifMatch != null && !EntityTags.matches(ifMatch, UserVO.entityTag(user))) {
+            throw new CustomException("User was modified", ErrorCode.PreconditionFailed);
+        }
+
         if (isEmailTaken(userUpdateVO.email()) && !user.getEmail().equals(userUpdateVO.email())) {
             throw new CustomException("Email already taken", ErrorCode.AlreadyExists);
         }
@@ -123,9 +201,22 @@ public class UserService {
         user.setPhone(userUpdateVO.phone());
         user.setEmail(userUpdateVO.email());
 
-        return userRepository.save(user);
+        User saved;
+        try {
+            saved = saveUnique(user, userRepository::saveAndFlush);
+        } catch (OptimisticLockingFailureException e) {
+            if (ifMatch == null) {
+                throw e;
+            }
+            throw new CustomException("User was modified", ErrorCode.PreconditionFailed);
+        }
+
+        deviceService.refreshSearchDocumentsOfUser(saved.getId());
+
+        return saved;
     }
 
+    @CacheEvict(cacheNames = CacheConfig.PRINCIPALS, key = "#id")
     public void updatePassword(Long id, ChangePasswordVO passwordVO) {
         User user = getUserById(id);
         if (user.getRole() == UserRole.ADMIN) {
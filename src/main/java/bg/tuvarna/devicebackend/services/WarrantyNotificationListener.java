@@ -0,0 +1,20 @@
+package bg.tuvarna.devicebackend.services;
+
+import bg.tuvarna.devicebackend.models.events.WarrantyExpiringEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+@Component
+public class WarrantyNotificationListener {
+    private static final Logger logger = LoggerFactory.getLogger(WarrantyNotificationListener.class);
+
+    @EventListener
+    public void onWarrantyExpiring(WarrantyExpiringEvent event) {
+        logger.info(
+                "Warranty of device {} (user {}) expires on {}",
+                event.serialNumber(), event.userId(), event.warrantyExpirationDate()
+        );
+    }
+}
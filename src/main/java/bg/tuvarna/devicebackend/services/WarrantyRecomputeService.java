@@ -0,0 +1,259 @@
+package bg.tuvarna.devicebackend.services;
+
+import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
+import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
+import bg.tuvarna.devicebackend.models.dtos.WarrantyRecomputeVO;
+import bg.tuvarna.devicebackend.models.enums.WarrantyRecomputeStatus;
+import bg.tuvarna.devicebackend.utils.OptimisticRetry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Recomputes {@code warrantyExpirationDate} of every device of a passport after its {@code warrantyMonths} changed,
+ * applying the same rule as registration: purchase date plus the passport warranty, plus 12 months for devices
+ * owned by a registered user. Devices are walked in keyset-paged chunks of {@code passports.warranty-recompute.chunk-size}
+ * over {@code idx_devices_passport}, and each chunk is written with one batched update in its own short transaction,
+ * so row locks are held only for the duration of a chunk. Every row is written only if its {@code version} is still
+ * the one read; rows changed in between are re-read and recomputed one by one through {@link OptimisticRetry},
+ * up to {@code concurrency.optimistic.max-attempts} times.
+ * Jobs run one at a time on a single background thread; a newer change to the same passport supersedes the running job,
+ * which stops at its next chunk.
+ */
+@Service
+public class WarrantyRecomputeService implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(WarrantyRecomputeService.class);
+    private static final String COUNT_DEVICES = "select count(*) from devices where passport_id = ?";
+    private static final String NEXT_CHUNK = "select serial_number, purchase_date, warranty_expiration_date, user_id, version " +
+            "from devices where passport_id = ? and serial_number > ? order by serial_number limit ?";
+    private static final String FIND_DEVICE = "select serial_number, purchase_date, warranty_expiration_date, user_id, version " +
+            "from devices where passport_id = ? and serial_number = ?";
+    private static final String UPDATE_WARRANTY = "update devices set warranty_expiration_date = ?, version = version + 1 " +
+            "where serial_number = ? and version = ?";
+    private static final RowMapper<DeviceRow> DEVICE_ROW = (rs, rowNum) -> new DeviceRow(
+            rs.getString(1),
+            rs.getObject(2, LocalDate.class),
+            rs.getObject(3, LocalDate.class),
+            rs.getObject(4) != null,
+            rs.getLong(5)
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final WarrantyScanService warrantyScanService;
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "warranty-recompute"));
+
+    @Value("${passports.warranty-recompute.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${concurrency.optimistic.max-attempts:3}")
+    private int maxAttempts;
+
+    public WarrantyRecomputeService(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            WarrantyScanService warrantyScanService
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.warrantyScanService = warrantyScanService;
+    }
+
+    public WarrantyRecomputeVO start(Long passportId, int warrantyMonths) {
+        Job job = new Job(passportId, warrantyMonths);
+        Job previous = jobs.put(passportId, job);
+        if (previous != null) {
+            previous.superseded = true;
+        }
+
+        executor.submit(() -> run(job));
+        return job.toVO();
+    }
+
+    public WarrantyRecomputeVO progress(Long passportId) {
+        Job job = jobs.get(passportId);
+        if (job == null) {
+            throw new CustomException("No warranty recomputation for passport", ErrorCode.EntityNotFound);
+        }
+
+        return job.toVO();
+    }
+
+    private void run(Job job) {
+        if (job.superseded) {
+            job.finish(WarrantyRecomputeStatus.SUPERSEDED);
+            return;
+        }
+
+        job.status = WarrantyRecomputeStatus.RUNNING;
+        job.startedAt = Instant.now();
+
+        try {
+            job.total = Objects.requireNonNull(jdbcTemplate.queryForObject(COUNT_DEVICES, Long.class, job.passportId));
+            meterRegistry.timer("passports.warranty.recompute").record(() -> recompute(job));
+            job.finish(job.superseded ? WarrantyRecomputeStatus.SUPERSEDED : WarrantyRecomputeStatus.COMPLETED);
+        } catch (RuntimeException e) {
+            logger.error("Warranty recomputation of passport {} failed after {} devices", job.passportId, job.processed, e);
+            job.finish(WarrantyRecomputeStatus.FAILED);
+        }
+    }
+
+    private void recompute(Job job) {
+        String after = "";
+
+        while (!job.superseded) {
+            List<DeviceRow> chunk = jdbcTemplate.query(NEXT_CHUNK, DEVICE_ROW, job.passportId, after, chunkSize);
+            if (chunk.isEmpty()) {
+                return;
+            }
+
+            List<DeviceRow> pending = stale(chunk, job.warrantyMonths);
+            List<DeviceRow> conflicts = pending.isEmpty() ? List.of() : write(pending, job.warrantyMonths);
+            job.updated += pending.size() - conflicts.size();
+
+            for (DeviceRow conflict : conflicts) {
+                meterRegistry.counter("passports.warranty.recompute.conflicts").increment();
+                try {
+                    if (OptimisticRetry.onConflict(maxAttempts, () -> rewrite(conflict.serialNumber(), job))) {
+                        job.updated++;
+                    }
+                } catch (OptimisticLockingFailureException e) {
+                    logger.warn("Warranty of device {} kept changing concurrently and was not recomputed", conflict.serialNumber());
+                }
+            }
+
+            job.processed += chunk.size();
+            after = chunk.get(chunk.size() - 1).serialNumber();
+        }
+    }
+
+    private static List<DeviceRow> stale(List<DeviceRow> rows, int warrantyMonths) {
+        return rows.stream()
+                .filter(row -> row.purchaseDate() != null)
+                .filter(row -> !row.warrantyFor(warrantyMonths).equals(row.warrantyExpirationDate()))
+                .toList();
+    }
+
+    // Writes the rows whose version is unchanged since they were read and returns the ones that were modified in between.
+    private List<DeviceRow> write(List<DeviceRow> rows, int warrantyMonths) {
+        List<DeviceRow> conflicts = transactionTemplate.execute(status -> {
+            int[][] counts = jdbcTemplate.batchUpdate(
+                    UPDATE_WARRANTY,
+                    rows,
+                    rows.size(),
+                    (ps, row) -> {
+                        ps.setDate(1, Date.valueOf(row.warrantyFor(warrantyMonths)));
+                        ps.setString(2, row.serialNumber());
+                        ps.setLong(3, row.version());
+                    }
+            );
+
+            List<DeviceRow> modified = new ArrayList<>();
+            Map<String, LocalDate> written = new HashMap<>();
+            for (int i = 0; i < rows.size(); i++) {
+                if (counts[0][i] == 0) {
+                    modified.add(rows.get(i));
+                } else {
+                    written.put(rows.get(i).serialNumber(), rows.get(i).warrantyFor(warrantyMonths));
+                }
+            }
+
+            warrantyScanService.enqueue(written);
+            return modified;
+        });
+
+        meterRegistry.counter("passports.warranty.recompute.devices").increment(rows.size() - conflicts.size());
+        return conflicts;
+    }
+
+    /**
+     * Re-reads one device that changed after its chunk was read and writes its warranty if it is still stale.
+     * Devices that were deleted or moved to another passport in the meantime are skipped.
+     */
+    private boolean rewrite(String serialNumber, Job job) {
+        DeviceRow row = jdbcTemplate.query(FIND_DEVICE, DEVICE_ROW, job.passportId, serialNumber).stream()
+                .findFirst()
+                .orElse(null);
+        if (row == null || stale(List.of(row), job.warrantyMonths).isEmpty()) {
+            return false;
+        }
+
+        LocalDate warranty = row.warrantyFor(job.warrantyMonths);
+        int updated = jdbcTemplate.update(UPDATE_WARRANTY, Date.valueOf(warranty), row.serialNumber(), row.version());
+        if (updated == 0) {
+            throw new OptimisticLockingFailureException("Device " + serialNumber + " was modified concurrently");
+        }
+        warrantyScanService.enqueue(Map.of(row.serialNumber(), warranty));
+
+        meterRegistry.counter("passports.warranty.recompute.devices").increment();
+        return true;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private record DeviceRow(
+            String serialNumber,
+            LocalDate purchaseDate,
+            LocalDate warrantyExpirationDate,
+            boolean registered,
+            long version
+    ) {
+        LocalDate warrantyFor(int warrantyMonths) {
+            LocalDate warranty = purchaseDate.plusMonths(warrantyMonths);
+            return registered ? warranty.plusMonths(12) : warranty;
+        }
+    }
+
+    private static final class Job {
+        private final Long passportId;
+        private final int warrantyMonths;
+        private volatile WarrantyRecomputeStatus status = WarrantyRecomputeStatus.QUEUED;
+        private volatile boolean superseded;
+        private volatile long total;
+        private volatile long processed;
+        private volatile long updated;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+
+        private Job(Long passportId, int warrantyMonths) {
+            this.passportId = passportId;
+            this.warrantyMonths = warrantyMonths;
+        }
+
+        private void finish(WarrantyRecomputeStatus status) {
+            this.finishedAt = Instant.now();
+            this.status = status;
+        }
+
+        private WarrantyRecomputeVO toVO() {
+            return new WarrantyRecomputeVO(passportId, warrantyMonths, status, total, processed, updated, startedAt, finishedAt);
+        }
+    }
+}
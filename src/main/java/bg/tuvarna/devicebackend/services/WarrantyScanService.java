@@ -0,0 +1,230 @@
+package bg.tuvarna.devicebackend.services;
+
+import bg.tuvarna.devicebackend.models.entities.WarrantyScanCheckpoint;
+import bg.tuvarna.devicebackend.models.events.WarrantyExpiringEvent;
+import bg.tuvarna.devicebackend.repositories.WarrantyScanCheckpointRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes a {@link WarrantyExpiringEvent} for every device whose warranty expires within {@code warranty.scan.window-days}.
+ * Each run covers only the expiration dates that entered the window since the previous run. That range is split into
+ * {@code warranty.scan.partitions} contiguous date slices, which are scanned in parallel in keyset-paged batches over
+ * {@code idx_devices_warranty_expiration}. Every batch advances the slice's {@link WarrantyScanCheckpoint}, so a run
+ * interrupted by a restart resumes where it stopped. A batch whose checkpoint was not saved is published again,
+ * so listeners must tolerate duplicates.
+ * Devices whose expiration is written later, by an edit, a registration, an import or a recompute, may land in dates
+ * that were already scanned. Those writers {@link #enqueue} the device, and the next run notifies the queued devices
+ * whose date lies in the scanned range, so the range itself is never read again.
+ */
+@Service
+@RequiredArgsConstructor
+public class WarrantyScanService {
+    private static final Logger logger = LoggerFactory.getLogger(WarrantyScanService.class);
+    private static final String NEXT_BATCH = "select serial_number, user_id, warranty_expiration_date from devices " +
+            "where warranty_expiration_date between ? and ? " +
+            "and (warranty_expiration_date, serial_number) > (?, ?) " +
+            "order by warranty_expiration_date, serial_number limit ?";
+    private static final String ENQUEUE = "insert into warranty_scan_queue (serial_number, enqueued_at) values (?, ?)";
+    private static final String LAST_QUEUED = "select max(id) from warranty_scan_queue";
+    private static final String QUEUED_IN_RANGE = "select serial_number, user_id, warranty_expiration_date from devices " +
+            "where serial_number in (select q.serial_number from warranty_scan_queue q where q.id <= ?) " +
+            "and warranty_expiration_date between ? and ?";
+    private static final String DEQUEUE = "delete from warranty_scan_queue where id <= ?";
+    private static final RowMapper<WarrantyExpiringEvent> EVENT = (rs, rowNum) -> new WarrantyExpiringEvent(
+            rs.getString(1),
+            rs.getObject(2) != null ? rs.getLong(2) : null,
+            rs.getDate(3).toLocalDate()
+    );
+
+    private final WarrantyScanCheckpointRepository checkpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final ReentrantLock running = new ReentrantLock();
+
+    @Value("${warranty.scan.window-days:30}")
+    private int windowDays;
+
+    @Value("${warranty.scan.batch-size:500}")
+    private int batchSize;
+
+    @Value("${warranty.scan.partitions:4}")
+    private int partitions;
+
+    @Scheduled(cron = "${warranty.scan.cron:0 0 3 * * *}")
+    public void scheduledScan() {
+        long notified = scan(LocalDate.now());
+        logger.info("Warranty scan notified {} devices", notified);
+    }
+
+    /**
+     * Notifies the queued devices whose new expiration lies in already scanned dates, resumes unfinished slices,
+     * scans the dates up to {@code today + window-days} that no earlier run covered, and returns the number of
+     * devices notified by this call.
+     */
+    public long scan(LocalDate today) {
+        if (!running.tryLock()) {
+            logger.warn("Warranty scan is already running, skipping");
+            return 0;
+        }
+
+        try {
+            Optional<LocalDate> scannedUntil = checkpointRepository.findLastScannedDate();
+            List<WarrantyScanCheckpoint> slices = new ArrayList<>(checkpointRepository.findByCompletedFalseOrderBySliceFrom());
+            slices.addAll(plan(today, scannedUntil));
+
+            long notified = meterRegistry.timer("warranty.scan").record(
+                    () -> notifyQueued(today, scannedUntil) + scanSlices(slices)
+            );
+            checkpointRepository.findLastScannedDate().ifPresent(checkpointRepository::deleteCompletedBefore);
+            return notified;
+        } finally {
+            running.unlock();
+        }
+    }
+
+    /**
+     * Queues devices whose warranty expiration was just written, so the next scan notifies them even if their date
+     * was already scanned. Dates outside the window are skipped, as the scan of new dates reaches them on its own.
+     * Runs in the caller's transaction, so the entries are stored only if the write commits.
+     */
+    public void enqueue(Map<String, LocalDate> warrantyExpirations) {
+        LocalDate today = LocalDate.now();
+        LocalDate windowEnd = today.plusDays(windowDays);
+        Timestamp now = Timestamp.from(Instant.now());
+
+        List<Object[]> rows = warrantyExpirations.entrySet().stream()
+                .filter(e -> e.getValue() != null && !e.getValue().isBefore(today) && !e.getValue().isAfter(windowEnd))
+                .map(e -> new Object[]{e.getKey(), now})
+                .toList();
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(ENQUEUE, rows);
+        }
+    }
+
+    // Entries queued while this runs stay for the next run, which may publish a device twice but never skips one.
+    private long notifyQueued(LocalDate today, Optional<LocalDate> scannedUntil) {
+        Long lastQueued = jdbcTemplate.queryForObject(LAST_QUEUED, Long.class);
+        if (lastQueued == null) {
+            return 0;
+        }
+
+        List<WarrantyExpiringEvent> queued = scannedUntil
+                .filter(until -> !until.isBefore(today))
+                .map(until -> jdbcTemplate.query(QUEUED_IN_RANGE, EVENT, lastQueued, Date.valueOf(today), Date.valueOf(until)))
+                .orElse(List.of());
+
+        queued.forEach(eventPublisher::publishEvent);
+        meterRegistry.counter("warranty.scan.notified").increment(queued.size());
+        jdbcTemplate.update(DEQUEUE, lastQueued);
+        return queued.size();
+    }
+
+    private List<WarrantyScanCheckpoint> plan(LocalDate today, Optional<LocalDate> scannedUntil) {
+        LocalDate to = today.plusDays(windowDays);
+        LocalDate from = scannedUntil.map(last -> last.plusDays(1)).orElse(today);
+        if (from.isAfter(to)) {
+            return List.of();
+        }
+
+        long days = ChronoUnit.DAYS.between(from, to) + 1;
+        long sliceDays = (days + partitions - 1) / partitions;
+        List<WarrantyScanCheckpoint> slices = new ArrayList<>();
+
+        for (LocalDate sliceFrom = from; !sliceFrom.isAfter(to); sliceFrom = sliceFrom.plusDays(sliceDays)) {
+            LocalDate sliceTo = sliceFrom.plusDays(sliceDays - 1);
+            slices.add(new WarrantyScanCheckpoint(sliceFrom, sliceTo.isAfter(to) ? to : sliceTo));
+        }
+
+        return checkpointRepository.saveAll(slices);
+    }
+
+    private long scanSlices(List<WarrantyScanCheckpoint> slices) {
+        if (slices.isEmpty()) {
+            return 0;
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        long notified = 0;
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(partitions, slices.size()),
+                runnable -> new Thread(runnable, "warranty-scan-" + threadNumber.incrementAndGet())
+        )) {
+            List<Future<Long>> results = slices.stream()
+                    .map(slice -> executor.submit(() -> scanSlice(slice)))
+                    .toList();
+
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    notified += results.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.error("Warranty scan of {}..{} failed, it resumes on the next run",
+                            slices.get(i).getSliceFrom(), slices.get(i).getSliceTo(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        return notified;
+    }
+
+    private long scanSlice(WarrantyScanCheckpoint slice) {
+        long notified = 0;
+
+        while (!slice.isCompleted()) {
+            List<WarrantyExpiringEvent> batch = jdbcTemplate.query(
+                    NEXT_BATCH,
+                    EVENT,
+                    Date.valueOf(slice.getSliceFrom()),
+                    Date.valueOf(slice.getSliceTo()),
+                    Date.valueOf(slice.getLastExpirationDate() != null ? slice.getLastExpirationDate() : slice.getSliceFrom()),
+                    slice.getLastSerialNumber() != null ? slice.getLastSerialNumber() : "",
+                    batchSize
+            );
+
+            batch.forEach(eventPublisher::publishEvent);
+            notified += batch.size();
+            meterRegistry.counter("warranty.scan.notified").increment(batch.size());
+
+            if (!batch.isEmpty()) {
+                WarrantyExpiringEvent last = batch.get(batch.size() - 1);
+                slice.setLastExpirationDate(last.warrantyExpirationDate());
+                slice.setLastSerialNumber(last.serialNumber());
+            }
+            slice.setNotified(slice.getNotified() + batch.size());
+            slice.setCompleted(batch.size() < batchSize);
+            slice.setUpdatedAt(Instant.now());
+            slice = checkpointRepository.save(slice);
+        }
+
+        return notified;
+    }
+}
@@ -0,0 +1,45 @@
+package bg.tuvarna.devicebackend.utils;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Tells which constraint a failed write violated. PostgreSQL reports the bare constraint name while H2 decorates it
+ * with the schema and index, so names are compared case-insensitively by containment. Primary keys cannot be named
+ * through the mapping, so they are recognized by their table instead.
+ */
+public final class Constraints {
+    private Constraints() {
+    }
+
+    public static boolean violates(DataIntegrityViolationException e, String constraint) {
+        String name = constraint.toLowerCase(Locale.ROOT);
+
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null) {
+                return violation.getConstraintName().toLowerCase(Locale.ROOT).contains(name);
+            }
+        }
+
+        return e.getMessage() != null && e.getMessage().toLowerCase(Locale.ROOT).contains(name);
+    }
+
+    /**
+     * PostgreSQL names the primary key {@code <table>_pkey}, H2 reports a generated {@code PRIMARY_KEY_<n>} index
+     * followed by the table it belongs to.
+     */
+    public static boolean violatesPrimaryKey(DataIntegrityViolationException e, String table) {
+        if (violates(e, table + "_pkey")) {
+            return true;
+        }
+
+        String message = e.getMostSpecificCause().getMessage();
+        return message != null && Pattern
+                .compile("primary_key_\\d+ on (\\w+\\.)?" + Pattern.quote(table) + "\\(", Pattern.CASE_INSENSITIVE)
+                .matcher(message)
+                .find();
+    }
+}
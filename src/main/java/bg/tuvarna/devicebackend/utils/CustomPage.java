@@ -1,18 +1,68 @@
 package bg.tuvarna.devicebackend.utils;
 
+import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
+import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.springframework.data.domain.Limit;
 
 import java.util.List;
+import java.util.function.Function;
 
 @NoArgsConstructor
 @Setter
 @Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class CustomPage<T> {
-    private int currentPage;
-    private int totalPages;
+    public static final int MAX_CURSOR_SIZE = 100;
+
+    private Integer currentPage;
+    private Integer totalPages;
     private int size;
-    private long totalItems;
+    private Long totalItems;
+    private String nextCursor;
     private List<T> items;
-}
\ No newline at end of file
+
+    /**
+     * Builds a cursor page from a seek query that fetched up to {@code size + 1} rows.
+     * The extra row only signals that another page exists and is not returned.
+     */
+    public static <T> CustomPage<T> ofCursor(List<T> rows, int size, Function<T, ?> cursorOf, Long totalItems) {
+        CustomPage<T> customPage = new CustomPage<>();
+        List<T> items = rows.size() > size ? rows.subList(0, size) : rows;
+
+        customPage.setItems(items);
+        customPage.setSize(size);
+        customPage.setTotalItems(totalItems);
+        if (rows.size() > size) {
+            customPage.setNextCursor(String.valueOf(cursorOf.apply(items.get(items.size() - 1))));
+        }
+
+        return customPage;
+    }
+
+    /**
+     * Row limit of the seek query behind a cursor page of {@code size} items, one row more than the page holds.
+     */
+    public static Limit cursorLimit(int size) {
+        if (size < 1 || size > MAX_CURSOR_SIZE) {
+            throw new CustomException("Page size must be between 1 and " + MAX_CURSOR_SIZE, ErrorCode.Validation);
+        }
+
+        return Limit.of(size + 1);
+    }
+
+    public static long idCursor(String after) {
+        if (after.isBlank()) {
+            return 0L;
+        }
+
+        try {
+            return Long.parseLong(after);
+        } catch (NumberFormatException e) {
+            throw new CustomException("Invalid cursor", ErrorCode.Validation);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package bg.tuvarna.devicebackend.utils;
+
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Builds strong HTTP entity tags from the parts a representation is made of, typically ids and {@code @Version} values,
+ * so a cached copy can be validated without loading or serializing the body.
+ */
+public final class EntityTags {
+    private EntityTags() {
+    }
+
+    public static String of(Object... parts) {
+        String joined = Arrays.stream(parts).map(String::valueOf).collect(Collectors.joining("|"));
+        return "\"" + DigestUtils.md5DigestAsHex(joined.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Evaluates an {@code If-Match} header against the current tags of a resource, using strong comparison,
+     * so weak tags never match.
+     */
+    public static boolean matches(String ifMatch, String... current) {
+        for (String candidate : ifMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (!tag.startsWith("W/") && Arrays.asList(current).contains(tag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,44 @@
+package bg.tuvarna.devicebackend.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Re-runs a read-modify-write that lost an optimistic locking race, up to {@code maxAttempts} times with a short
+ * randomized backoff. Only for actions that re-read their state on every attempt and would write the same result
+ * from the same state, so running them again cannot overwrite the concurrent change with stale data.
+ */
+public final class OptimisticRetry {
+    private static final Logger logger = LoggerFactory.getLogger(OptimisticRetry.class);
+    private static final long BACKOFF_MILLIS = 10;
+
+    private OptimisticRetry() {
+    }
+
+    public static <T> T onConflict(int maxAttempts, Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                logger.debug("Optimistic locking conflict, retrying (attempt {} of {})", attempt + 1, maxAttempts);
+                backoff(attempt);
+            }
+        }
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(BACKOFF_MILLIS * attempt, BACKOFF_MILLIS * attempt * 2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying", e);
+        }
+    }
+}
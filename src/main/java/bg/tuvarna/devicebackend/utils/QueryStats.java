@@ -0,0 +1,69 @@
+package bg.tuvarna.devicebackend.utils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SQL statements executed on the current thread while a scope is open.
+ * Scopes nest: a statement is recorded by the innermost scope and every scope enclosing it,
+ * so a test can open its own scope around a request that the web filter also measures.
+ */
+public final class QueryStats implements AutoCloseable {
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+
+    private final QueryStats parent;
+    private final Map<String, Integer> executions = new HashMap<>();
+    private int statements;
+    private long dbTimeNanos;
+    private boolean closed;
+
+    private QueryStats(QueryStats parent) {
+        this.parent = parent;
+    }
+
+    public static QueryStats open() {
+        QueryStats stats = new QueryStats(CURRENT.get());
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    public static void record(String sql, long elapsedNanos) {
+        for (QueryStats stats = CURRENT.get(); stats != null; stats = stats.parent) {
+            stats.statements++;
+            stats.dbTimeNanos += elapsedNanos;
+            stats.executions.merge(sql, 1, Integer::sum);
+        }
+    }
+
+    public int statements() {
+        return statements;
+    }
+
+    public Duration dbTime() {
+        return Duration.ofNanos(dbTimeNanos);
+    }
+
+    /**
+     * The statement executed most often in this scope, the usual signature of an N+1 select.
+     */
+    public Map.Entry<String, Integer> mostRepeated() {
+        return executions.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .orElse(null);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        if (parent != null) {
+            CURRENT.set(parent);
+        } else {
+            CURRENT.remove();
+        }
+    }
+}
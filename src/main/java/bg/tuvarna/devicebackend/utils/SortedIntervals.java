@@ -0,0 +1,147 @@
+package bg.tuvarna.devicebackend.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Immutable set of closed integer intervals sorted by their start, augmented with the running maximum end.
+ * Point and overlap queries binary search the start and then walk back only while the running maximum
+ * still reaches the queried value, so they stay logarithmic for non-overlapping data and remain correct
+ * when intervals do overlap. Mutators return a new instance, which lets readers use it without locking.
+ */
+public final class SortedIntervals<T> {
+    private static final SortedIntervals<?> EMPTY = new SortedIntervals<>(new int[0], new int[0], new int[0], new Object[0]);
+
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] maxEnds;
+    private final Object[] values;
+
+    private SortedIntervals(int[] starts, int[] ends, int[] maxEnds, Object[] values) {
+        this.starts = starts;
+        this.ends = ends;
+        this.maxEnds = maxEnds;
+        this.values = values;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> SortedIntervals<T> empty() {
+        return (SortedIntervals<T>) EMPTY;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T find(int point) {
+        for (int i = lastStartAtMost(point); i >= 0 && maxEnds[i] >= point; i--) {
+            if (ends[i] >= point) {
+                return (T) values[i];
+            }
+        }
+
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<T> overlapping(int start, int end) {
+        List<T> result = new ArrayList<>();
+
+        for (int i = lastStartAtMost(end); i >= 0 && maxEnds[i] >= start; i--) {
+            if (ends[i] >= start) {
+                result.add((T) values[i]);
+            }
+        }
+
+        Collections.reverse(result);
+        return result;
+    }
+
+    public SortedIntervals<T> with(int start, int end, T value) {
+        int position = lastStartAtMost(start) + 1;
+        int size = values.length + 1;
+
+        int[] newStarts = new int[size];
+        int[] newEnds = new int[size];
+        int[] newMaxEnds = new int[size];
+        Object[] newValues = new Object[size];
+
+        System.arraycopy(starts, 0, newStarts, 0, position);
+        System.arraycopy(ends, 0, newEnds, 0, position);
+        System.arraycopy(maxEnds, 0, newMaxEnds, 0, position);
+        System.arraycopy(values, 0, newValues, 0, position);
+
+        newStarts[position] = start;
+        newEnds[position] = end;
+        newValues[position] = value;
+
+        System.arraycopy(starts, position, newStarts, position + 1, values.length - position);
+        System.arraycopy(ends, position, newEnds, position + 1, values.length - position);
+        System.arraycopy(values, position, newValues, position + 1, values.length - position);
+
+        recomputeMaxEnds(newEnds, newMaxEnds, position);
+
+        return new SortedIntervals<>(newStarts, newEnds, newMaxEnds, newValues);
+    }
+
+    @SuppressWarnings("unchecked")
+    public SortedIntervals<T> without(Predicate<T> predicate) {
+        int[] newStarts = new int[values.length];
+        int[] newEnds = new int[values.length];
+        Object[] newValues = new Object[values.length];
+        int size = 0;
+
+        for (int i = 0; i < values.length; i++) {
+            if (!predicate.test((T) values[i])) {
+                newStarts[size] = starts[i];
+                newEnds[size] = ends[i];
+                newValues[size] = values[i];
+                size++;
+            }
+        }
+
+        if (size == values.length) {
+            return this;
+        }
+
+        if (size == 0) {
+            return empty();
+        }
+
+        int[] newMaxEnds = new int[size];
+        newEnds = Arrays.copyOf(newEnds, size);
+        recomputeMaxEnds(newEnds, newMaxEnds, 0);
+
+        return new SortedIntervals<>(Arrays.copyOf(newStarts, size), newEnds, newMaxEnds, Arrays.copyOf(newValues, size));
+    }
+
+    private int lastStartAtMost(int value) {
+        int low = 0;
+        int high = starts.length - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return high;
+    }
+
+    private static void recomputeMaxEnds(int[] ends, int[] maxEnds, int from) {
+        for (int i = from; i < ends.length; i++) {
+            maxEnds[i] = i == 0 ? ends[i] : Math.max(maxEnds[i - 1], ends[i]);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package bg.tuvarna.devicebackend.api;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@AutoConfigureObservability
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@TestPropertySource(properties = "management.server.port=0")
+public class ActuatorApiTests {
+    @LocalServerPort
+    private int serverPort;
+
+    @LocalManagementPort
+    private int managementPort;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void prometheus_shouldBeScrapedOnlyThroughTheManagementPort() {
+        var scrape = restTemplate.getForEntity("http://localhost:" + managementPort + "/actuator/prometheus", String.class);
+
+        assertAll(
+                () -> assertEquals(HttpStatus.OK, scrape.getStatusCode()),
+                () -> assertTrue(scrape.getBody().contains("jvm_memory_used_bytes")),
+                () -> assertEquals(
+                        HttpStatus.UNAUTHORIZED,
+                        restTemplate.getForEntity("http://localhost:" + serverPort + "/actuator/prometheus", String.class)
+                                .getStatusCode()
+                ),
+                () -> assertEquals(
+                        HttpStatus.UNAUTHORIZED,
+                        restTemplate.getForEntity("http://localhost:" + managementPort + "/actuator/metrics", String.class)
+                                .getStatusCode()
+                )
+        );
+    }
+}
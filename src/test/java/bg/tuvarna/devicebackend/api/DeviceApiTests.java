@@ -1,22 +1,32 @@
 package bg.tuvarna.devicebackend.api;
 
 import bg.tuvarna.devicebackend.controllers.exceptions.ErrorResponse;
+import bg.tuvarna.devicebackend.models.dtos.DeviceImportResultVO;
 import bg.tuvarna.devicebackend.models.dtos.DeviceVO;
+import bg.tuvarna.devicebackend.models.dtos.RenovationBatchResultVO;
 import bg.tuvarna.devicebackend.models.entities.Device;
 import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.models.entities.Renovation;
 import bg.tuvarna.devicebackend.models.entities.User;
 import bg.tuvarna.devicebackend.models.enums.UserRole;
 import bg.tuvarna.devicebackend.repositories.DeviceRepository;
 import bg.tuvarna.devicebackend.repositories.PassportRepository;
+import bg.tuvarna.devicebackend.repositories.RenovationRepository;
 import bg.tuvarna.devicebackend.repositories.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
@@ -25,12 +35,32 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
 
+import static bg.tuvarna.devicebackend.utils.QueryCountAssertions.assertStatementCount;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mockingDetails;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -46,15 +76,21 @@ public class DeviceApiTests {
     @Autowired
     private ObjectMapper mapper;
 
-    @Autowired
+    @SpyBean
     private DeviceRepository deviceRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Autowired
     private PassportRepository passportRepository;
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private RenovationRepository renovationRepository;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
@@ -99,6 +135,7 @@ public class DeviceApiTests {
 
     @AfterEach
     void tearDown() {
+        renovationRepository.deleteAll();
         deviceRepository.deleteAll();
         userRepository.deleteAll();
         passportRepository.deleteAll();
@@ -112,6 +149,42 @@ public class DeviceApiTests {
                 .andExpect(jsonPath("$.serialNumber").value("First1"));
     }
 
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void findDeviceById_shouldNotLoadAssociationsOneByOne() throws Exception {
+        assertStatementCount(1, () -> mvc.perform(get("/api/v1/devices/First1")).andExpect(status().isOk()));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void getDevices_shouldNotLoadAssociationsOneByOne() throws Exception {
+        for (int i = 2; i <= 5; i++) {
+            Device device = new Device();
+            device.setSerialNumber("First" + i);
+            device.setPassport(device1.getPassport());
+            device.setUser(device1.getUser());
+            device.setPurchaseDate(LocalDate.now());
+            device.setWarrantyExpirationDate(LocalDate.now().plusMonths(12));
+            deviceRepository.save(device);
+        }
+
+        assertStatementCount(2, () -> mvc.perform(get("/api/v1/devices")).andExpect(status().isOk()));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void getDevicesAfterCursor_shouldRejectPageSizesOutOfRange() throws Exception {
+        mvc.perform(get("/api/v1/devices").param("after", "").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].serialNumber").value("First1"));
+
+        for (String size : new String[]{"0", "-1", "101"}) {
+            mvc.perform(get("/api/v1/devices").param("after", "").param("size", size))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.error").value("Page size must be between 1 and 100"));
+        }
+    }
+
     @Test
     void deviceExists_shouldReturnDevice() throws Exception {
         mvc.perform(get("/api/v1/devices/exists/First1"))
@@ -132,4 +205,321 @@ public class DeviceApiTests {
 
         Assertions.assertEquals("Device not registered", errorResponse.getError());
     }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void importSellThroughFeed_shouldRegisterNewDevicesAndReportErrors() throws Exception {
+        MvcResult result = mvc.perform(
+                post("/api/v1/devices/import")
+                        .contentType("text/csv")
+                        .content("""
+                                deviceSerialNumber,purchaseDate
+                                First2,2024-01-10
+                                First1,2024-01-10
+                                First2,2024-01-11
+                                Unknown5,2024-01-10
+                                First3,10.01.2024
+                                """)
+        ).andExpect(status().isOk()).andReturn();
+
+        DeviceImportResultVO importResult = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                DeviceImportResultVO.class
+        );
+
+        assertEquals(1, importResult.registered());
+        assertEquals(4, importResult.failed());
+        assertEquals(1, importResult.completedBatches());
+        assertEquals(
+                LocalDate.of(2024, 1, 10).plusMonths(36),
+                deviceRepository.findById("First2").orElseThrow().getWarrantyExpirationDate()
+        );
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void importSellThroughFeed_shouldResolvePassportsTheIndexHasNotLoaded() throws Exception {
+        mvc.perform(get("/api/v1/devices/exists/First1")).andExpect(status().isOk());
+        jdbcTemplate.update("insert into passports (name, model, serial_prefix, warranty_months, from_serial_number, to_serial_number) " +
+                "values ('Elsewhere', 'Elsewhere', 'Elsewhere', 12, 1, 10)");
+
+        MvcResult result = mvc.perform(
+                post("/api/v1/devices/import")
+                        .contentType("application/x-ndjson")
+                        .content("""
+                                {"deviceSerialNumber": "Elsewhere5", "purchaseDate": "2024-01-10"}
+                                {"deviceSerialNumber": "Elsewhere11", "purchaseDate": "2024-01-10"}
+                                null
+                                """)
+        ).andExpect(status().isOk()).andReturn();
+
+        DeviceImportResultVO importResult = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                DeviceImportResultVO.class
+        );
+
+        assertEquals(1, importResult.registered());
+        assertEquals("Invalid serial number", importResult.errors().get(0).error());
+        assertEquals("Malformed row", importResult.errors().get(1).error());
+        assertEquals(
+                LocalDate.of(2025, 1, 10),
+                deviceRepository.findById("Elsewhere5").orElseThrow().getWarrantyExpirationDate()
+        );
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void importSellThroughFeed_shouldNotCountABatchThatFailedToCommit() throws Exception {
+        Answer<?> realMethod = mockingDetails(deviceRepository).getMockCreationSettings().getDefaultAnswer();
+        doAnswer(invocation -> {
+            Object existing = realMethod.answer(invocation);
+            Device registeredMeanwhile = new Device();
+            registeredMeanwhile.setSerialNumber("First3");
+            registeredMeanwhile.setPassport(device1.getPassport());
+            registeredMeanwhile.setPurchaseDate(LocalDate.now());
+            registeredMeanwhile.setWarrantyExpirationDate(LocalDate.now().plusMonths(36));
+            deviceRepository.save(registeredMeanwhile);
+            return existing;
+        }).when(deviceRepository).findExistingSerialNumbers(anyList());
+
+        MvcResult result = mvc.perform(
+                post("/api/v1/devices/import")
+                        .contentType("text/csv")
+                        .content("""
+                                deviceSerialNumber,purchaseDate
+                                First2,2024-01-10
+                                First3,2024-01-10
+                                """)
+        ).andExpect(status().isOk()).andReturn();
+
+        DeviceImportResultVO importResult = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                DeviceImportResultVO.class
+        );
+
+        assertEquals(0, importResult.registered());
+        assertEquals(0, importResult.completedBatches());
+        assertEquals("Failed to store device", importResult.errors().get(0).error());
+        assertTrue(deviceRepository.findById("First2").isEmpty());
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void exportDevicesAsNdjson_shouldNestJoinedRows() throws Exception {
+        for (String description : List.of("Screen", "Battery")) {
+            Renovation renovation = new Renovation();
+            renovation.setDevice(device1);
+            renovation.setDescription(description);
+            renovation.setRenovationDate(LocalDate.now());
+            renovationRepository.save(renovation);
+        }
+
+        MvcResult started = mvc.perform(get("/api/v1/devices/export").param("include", "user,passport,renovations"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult result = mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        JsonNode device = mapper.readTree(lines[0]);
+
+        assertAll(
+                () -> assertEquals(1, lines.length),
+                () -> assertEquals("First1", device.get("serialNumber").asText()),
+                () -> assertEquals("petra@gmail.com", device.get("user").get("email").asText()),
+                () -> assertEquals("FirstPassport", device.get("passport").get("name").asText()),
+                () -> assertEquals(2, device.get("renovations").size()),
+                () -> assertEquals("Screen", device.get("renovations").get(0).get("description").asText())
+        );
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void exportDevicesAsCsv_shouldBeGzippedWhenAccepted() throws Exception {
+        MvcResult started = mvc.perform(
+                        get("/api/v1/devices/export")
+                                .param("format", "csv")
+                                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate")
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult result = mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+
+        String csv;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+            csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String[] lines = csv.split("\n");
+
+        assertAll(
+                () -> assertEquals(2, lines.length),
+                () -> assertTrue(lines[0].startsWith("serialNumber,purchaseDate,warrantyExpirationDate,comment,userId")),
+                () -> assertTrue(lines[1].startsWith("First1,"))
+        );
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void saveRenovationBatch_shouldStoreValidItemsAndReportEachItem() throws Exception {
+        MvcResult result = mvc.perform(
+                post("/api/v1/renovations/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                [
+                                    {"deviceSerialNumber": "First1", "description": "Screen", "renovationDate": "2024-03-01"},
+                                    {"deviceSerialNumber": "Unknown5", "description": "Screen", "renovationDate": "2024-03-01"},
+                                    {"deviceSerialNumber": "First1", "description": "", "renovationDate": "2024-03-02"},
+                                    {"deviceSerialNumber": "First1", "description": "Battery", "renovationDate": "2024-03-03"}
+                                ]
+                                """)
+        ).andExpect(status().isOk()).andReturn();
+
+        RenovationBatchResultVO batchResult = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                RenovationBatchResultVO.class
+        );
+
+        assertAll(
+                () -> assertEquals(2, batchResult.created()),
+                () -> assertEquals(2, batchResult.failed()),
+                () -> assertEquals("Device not registered", batchResult.items().get(1).error()),
+                () -> assertEquals("Description is required", batchResult.items().get(2).error()),
+                () -> assertEquals(
+                        List.of("Battery", "Screen"),
+                        renovationRepository.findAll().stream().map(Renovation::getDescription).sorted().toList()
+                ),
+                () -> assertEquals(
+                        "Battery",
+                        renovationRepository.findById(batchResult.items().get(3).id()).orElseThrow().getDescription()
+                )
+        );
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void findDevice_shouldSummarizeRenovationsUnlessHistoryIsRequested() throws Exception {
+        for (int month = 1; month <= 3; month++) {
+            Renovation renovation = new Renovation();
+            renovation.setDevice(device1);
+            renovation.setDescription("Service " + month);
+            renovation.setRenovationDate(LocalDate.of(2024, month, 1));
+            renovationRepository.save(renovation);
+        }
+
+        mvc.perform(get("/api/v1/devices/First1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.renovationCount").value(3))
+                .andExpect(jsonPath("$.latestRenovation.description").value("Service 3"))
+                .andExpect(jsonPath("$.latestRenovation", not(hasKey("device"))))
+                .andExpect(jsonPath("$.renovations").doesNotExist());
+
+        mvc.perform(get("/api/v1/devices/First1").param("includeRenovations", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.renovations.length()").value(3))
+                .andExpect(jsonPath("$.renovations[0]", not(hasKey("device"))));
+
+        mvc.perform(get("/api/v1/devices/First1/renovations")
+                        .param("from", "2024-02-01")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalItems").value(2))
+                .andExpect(jsonPath("$.items[0].description").value("Service 3"));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void findDevice_shouldAnswerNotModifiedUntilTheDeviceChanges() throws Exception {
+        String eTag = mvc.perform(get("/api/v1/devices/First1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get("/api/v1/devices/First1").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        Device device = deviceRepository.findById("First1").orElseThrow();
+        device.setComment("Screen replaced");
+        deviceRepository.save(device);
+
+        String changedTag = mvc.perform(get("/api/v1/devices/First1").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.comment").value("Screen replaced"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertTrue(eTag != null && !eTag.startsWith("W/") && !eTag.equals(changedTag));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void updateDevice_shouldRejectAStaleIfMatch() throws Exception {
+        String eTag = mvc.perform(get("/api/v1/devices/First1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String body = "{\"purchaseDate\": \"" + LocalDate.now().minusDays(1) + "\", \"comment\": \"Battery replaced\"}";
+
+        String updatedTag = mvc.perform(put("/api/v1/devices/First1")
+                        .header(HttpHeaders.IF_MATCH, eTag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.comment").value("Battery replaced"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(put("/api/v1/devices/First1")
+                        .header(HttpHeaders.IF_MATCH, eTag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body.replace("Battery", "Screen")))
+                .andExpect(status().isPreconditionFailed());
+
+        mvc.perform(get("/api/v1/devices/First1").header(HttpHeaders.IF_NONE_MATCH, updatedTag))
+                .andExpect(status().isNotModified());
+        assertTrue(updatedTag != null && !updatedTag.equals(eTag));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void updateDevice_shouldNotOverwriteAConcurrentWrite() throws Exception {
+        String eTag = mvc.perform(get("/api/v1/devices/First1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String body = "{\"purchaseDate\": \"" + LocalDate.now().minusDays(1) + "\", \"comment\": \"Battery replaced\"}";
+
+        editConcurrentlyOnNextRead();
+        mvc.perform(put("/api/v1/devices/First1")
+                        .header(HttpHeaders.IF_MATCH, eTag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isPreconditionFailed());
+
+        editConcurrentlyOnNextRead();
+        mvc.perform(put("/api/v1/devices/First1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.error").value("Modified concurrently, try again"));
+
+        assertEquals(
+                "Concurrent edit",
+                jdbcTemplate.queryForObject("select comment from devices where serial_number = ?", String.class, "First1")
+        );
+    }
+
+    // Lets the next lookup of First1 return its current state and then changes the row, as a concurrent request would.
+    private void editConcurrentlyOnNextRead() {
+        Answer<?> realMethod = mockingDetails(deviceRepository).getMockCreationSettings().getDefaultAnswer();
+        AtomicBoolean edited = new AtomicBoolean();
+        doAnswer(invocation -> {
+            Object device = realMethod.answer(invocation);
+            if (edited.compareAndSet(false, true)) {
+                jdbcTemplate.update(
+                        "update devices set comment = 'Concurrent edit', version = version + 1 where serial_number = ?", "First1"
+                );
+            }
+            return device;
+        }).when(deviceRepository).findById("First1");
+    }
 }
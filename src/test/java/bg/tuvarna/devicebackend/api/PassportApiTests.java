@@ -1,6 +1,7 @@
 package bg.tuvarna.devicebackend.api;
 
 import bg.tuvarna.devicebackend.controllers.exceptions.ErrorResponse;
+import bg.tuvarna.devicebackend.models.dtos.PassportImportResultVO;
 import bg.tuvarna.devicebackend.models.dtos.PassportVO;
 import bg.tuvarna.devicebackend.models.entities.Passport;
 import bg.tuvarna.devicebackend.repositories.PassportRepository;
@@ -14,12 +15,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -27,6 +30,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @SpringBootTest
 @AutoConfigureMockMvc
 @ActiveProfiles("test")
+@TestPropertySource(properties = "passports.import.batch-size=2")
 public class PassportApiTests {
     @Autowired
     private MockMvc mvc;
@@ -139,4 +143,84 @@ public class PassportApiTests {
 
         assertEquals("Serial number already exists", errorResponse.getError());
     }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void importPassportCatalogCsv_shouldInsertValidRowsAndReportErrors() throws Exception {
+        MvcResult result = mvc.perform(
+                post("/api/v1/passports/import")
+                        .contentType("text/csv")
+                        .content("""
+                                name,model,serialPrefix,warrantyMonths,fromSerialNumber,toSerialNumber
+                                Imported,Imported model,Imported,24,1,1000
+                                Overlapping,Overlapping model,First,24,10,20
+                                ,Missing name,Other,24,1,10
+                                Duplicate,Duplicate model,Imported,24,500,1500
+                                """)
+        ).andExpect(status().isOk()).andReturn();
+
+        PassportImportResultVO importResult = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                PassportImportResultVO.class
+        );
+
+        assertEquals(1, importResult.imported());
+        assertEquals(3, importResult.failed());
+        assertEquals(3, importResult.errors().get(0).line());
+        assertEquals("Serial number already exists", importResult.errors().get(0).error());
+        assertEquals("Name is required", importResult.errors().get(1).error());
+        assertEquals(5, importResult.errors().get(2).line());
+        assertEquals(4, passportRepository.count());
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void importPassportCatalogNdjson_shouldInsertRows() throws Exception {
+        MvcResult result = mvc.perform(
+                post("/api/v1/passports/import")
+                        .contentType("application/x-ndjson")
+                        .content("""
+                                {"name": "Line", "model": "Line", "serialPrefix": "Line", "warrantyMonths": 12, "fromSerialNumber": 1, "toSerialNumber": 10}
+                                {"name": "Line", "model": "Line", "serialPrefix": "Line", "warrantyMonths": 12, "fromSerialNumber": 11, "toSerialNumber": 20}
+                                not json
+                                null
+                                42
+                                ["Line"]
+                                """)
+        ).andExpect(status().isOk()).andReturn();
+
+        PassportImportResultVO importResult = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                PassportImportResultVO.class
+        );
+
+        assertEquals(2, importResult.imported());
+        assertEquals(4, importResult.failed());
+        assertTrue(importResult.errors().stream().allMatch(error -> error.error().equals("Malformed row")));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void importPassportCatalog_shouldReleaseTheRangesOfAFailedBatch() throws Exception {
+        MvcResult result = mvc.perform(
+                post("/api/v1/passports/import")
+                        .contentType("application/x-ndjson")
+                        .content("""
+                                {"name": "%s", "model": "Line", "serialPrefix": "Line", "warrantyMonths": 12, "fromSerialNumber": 1, "toSerialNumber": 10}
+                                {"name": "Line", "model": "Line", "serialPrefix": "Other", "warrantyMonths": 12, "fromSerialNumber": 1, "toSerialNumber": 10}
+                                {"name": "Line", "model": "Line", "serialPrefix": "Line", "warrantyMonths": 12, "fromSerialNumber": 1, "toSerialNumber": 10}
+                                {"name": "Line", "model": "Line", "serialPrefix": "Other", "warrantyMonths": 12, "fromSerialNumber": 1, "toSerialNumber": 10}
+                                """.formatted("Too long ".repeat(50)))
+        ).andExpect(status().isOk()).andReturn();
+
+        PassportImportResultVO importResult = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                PassportImportResultVO.class
+        );
+
+        assertEquals(2, importResult.imported());
+        assertEquals(2, importResult.failed());
+        assertEquals("Failed to store passport", importResult.errors().get(0).error());
+        assertEquals(2, importResult.errors().get(1).line());
+    }
 }
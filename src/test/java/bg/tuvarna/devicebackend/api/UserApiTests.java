@@ -0,0 +1,213 @@
+package bg.tuvarna.devicebackend.api;
+
+import bg.tuvarna.devicebackend.models.dtos.UserVO;
+import bg.tuvarna.devicebackend.models.entities.Device;
+import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.models.entities.User;
+import bg.tuvarna.devicebackend.models.enums.UserRole;
+import bg.tuvarna.devicebackend.repositories.DeviceRepository;
+import bg.tuvarna.devicebackend.repositories.PassportRepository;
+import bg.tuvarna.devicebackend.repositories.UserRepository;
+import bg.tuvarna.devicebackend.services.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mockingDetails;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class UserApiTests {
+    private static final String UPDATE = """
+            {
+              "fullName": "Petra Lewis-Smith",
+              "address": "New address",
+              "phone": "0888888887",
+              "email": "petra@gmail.com"
+            }
+            """;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @SpyBean
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private PassportRepository passportRepository;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+
+        user = userRepository.save(User.builder()
+                .fullName("Petra Lewis")
+                .phone("0888888887")
+                .email("petra@gmail.com")
+                .role(UserRole.USER)
+                .build());
+
+        Passport passport = passportRepository.save(Passport.builder()
+                .name("FirstPassport")
+                .model("FirstModel")
+                .serialPrefix("First")
+                .fromSerialNumber(1)
+                .toSerialNumber(100)
+                .warrantyMonths(36)
+                .build());
+
+        Device device = new Device();
+        device.setSerialNumber("First1");
+        device.setPassport(passport);
+        device.setUser(user);
+        device.setPurchaseDate(LocalDate.now());
+        device.setWarrantyExpirationDate(LocalDate.now().plusMonths(36));
+        deviceRepository.save(device);
+    }
+
+    @AfterEach
+    void tearDown() {
+        deviceRepository.deleteAll();
+        userRepository.deleteAll();
+        passportRepository.deleteAll();
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void updateUser_shouldApplyOnlyWithTheCurrentETag() throws Exception {
+        String eTag = UserVO.entityTag(userService.getUserWithDevices(user.getId()));
+
+        String updatedTag = mvc.perform(put("/api/v1/users/" + user.getId())
+                        .header(HttpHeaders.IF_MATCH, eTag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(UPDATE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fullName").value("Petra Lewis-Smith"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(put("/api/v1/users/" + user.getId())
+                        .header(HttpHeaders.IF_MATCH, eTag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(UPDATE))
+                .andExpect(status().isPreconditionFailed());
+
+        assertEquals(UserVO.entityTag(userService.getUserWithDevices(user.getId())), updatedTag);
+        assertNotEquals(eTag, updatedTag);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void updateUser_shouldNotOverwriteAConcurrentWrite() throws Exception {
+        editConcurrentlyOnNextRead();
+
+        mvc.perform(put("/api/v1/users/" + user.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(UPDATE))
+                .andExpect(status().isConflict());
+
+        assertEquals(
+                "Concurrent edit",
+                jdbcTemplate.queryForObject("select full_name from users where id = ?", String.class, user.getId())
+        );
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void registration_shouldRejectDuplicatesThroughConstraintsAndRollBackTheUser() throws Exception {
+        String registration = """
+                {
+                  "fullName": "Ivan Petrov",
+                  "email": "%s",
+                  "phone": "0888888886",
+                  "address": "address",
+                  "password": "Up3pass!",
+                  "deviceSerialNumber": "%s",
+                  "purchaseDate": "%s"
+                }
+                """;
+
+        mvc.perform(post("/api/v1/users/registration")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(registration.formatted("petra@gmail.com", "First2", LocalDate.now())))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Email already taken"));
+
+        mvc.perform(post("/api/v1/users/registration")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(registration.formatted("ivan@gmail.com", "First1", LocalDate.now())))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Device already registered"));
+
+        mvc.perform(post("/api/v1/devices/anonymousDevice")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"deviceSerialNumber\": \"First1\", \"purchaseDate\": \"" + LocalDate.now() + "\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Device already registered"));
+
+        assertAll(
+                () -> assertNull(userRepository.getByEmail("ivan@gmail.com")),
+                () -> assertEquals(user.getId(), deviceRepository.findById("First1").orElseThrow().getUser().getId()),
+                () -> assertTrue(deviceRepository.findById("First2").isEmpty())
+        );
+    }
+
+    // Lets the next lookup of the user return its current state and then changes the row, as a concurrent request would.
+    private void editConcurrentlyOnNextRead() {
+        Answer<?> realMethod = mockingDetails(userRepository).getMockCreationSettings().getDefaultAnswer();
+        AtomicBoolean edited = new AtomicBoolean();
+        doAnswer(invocation -> {
+            Object found = realMethod.answer(invocation);
+            if (edited.compareAndSet(false, true)) {
+                jdbcTemplate.update(
+                        "update users set full_name = 'Concurrent edit', version = version + 1 where id = ?", user.getId()
+                );
+            }
+            return found;
+        }).when(userRepository).findById(user.getId());
+    }
+}
@@ -0,0 +1,110 @@
+package bg.tuvarna.devicebackend.integrational;
+
+import bg.tuvarna.devicebackend.models.entities.Device;
+import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.repositories.DeviceRepository;
+import bg.tuvarna.devicebackend.repositories.PassportRepository;
+import bg.tuvarna.devicebackend.repositories.RenovationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The replica is the primary itself, reached through sessions that refuse writes like a hot standby does,
+ * so requests that read before they write fail if the write is routed to the replica.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Testcontainers(disabledWithoutDocker = true)
+public class ReplicaRequestRoutingTests {
+    @Container
+    private static final PostgreSQLContainer<?> database = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void dataSources(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+        registry.add("spring.datasource.url", database::getJdbcUrl);
+        registry.add("spring.datasource.username", database::getUsername);
+        registry.add("spring.datasource.password", database::getPassword);
+        registry.add("datasource.replica.url", () -> database.getJdbcUrl()
+                + (database.getJdbcUrl().contains("?") ? "&" : "?")
+                + "options=-c%20default_transaction_read_only%3Don");
+    }
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private PassportRepository passportRepository;
+
+    @Autowired
+    private RenovationRepository renovationRepository;
+
+    @BeforeEach
+    void setUp() {
+        Passport passport = passportRepository.save(Passport.builder()
+                .name("Passport")
+                .model("Model")
+                .serialPrefix("Replica")
+                .fromSerialNumber(1)
+                .toSerialNumber(100)
+                .warrantyMonths(12)
+                .build());
+
+        Device device = new Device();
+        device.setSerialNumber("Replica1");
+        device.setPassport(passport);
+        device.setPurchaseDate(LocalDate.now());
+        device.setWarrantyExpirationDate(LocalDate.now().plusMonths(12));
+        deviceRepository.save(device);
+    }
+
+    @AfterEach
+    void tearDown() {
+        renovationRepository.deleteAll();
+        deviceRepository.deleteAll();
+        passportRepository.deleteAll();
+    }
+
+    @Test
+    @WithMockUser(authorities = "ADMIN")
+    void writesAfterReadOnlyLookupsInTheSameRequestGoToThePrimary() throws Exception {
+        mvc.perform(post("/api/v1/renovations")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"deviceSerialNumber\": \"Replica1\", \"description\": \"Fan replaced\", " +
+                                "\"renovationDate\": \"" + LocalDate.now() + "\"}"))
+                .andExpect(status().isCreated());
+
+        mvc.perform(put("/api/v1/devices/Replica1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"purchaseDate\": \"" + LocalDate.now().minusDays(1) + "\", \"comment\": \"Checked\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.comment").value("Checked"));
+
+        assertEquals(1, renovationRepository.count());
+    }
+}
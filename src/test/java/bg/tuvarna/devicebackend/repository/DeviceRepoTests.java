@@ -1,6 +1,7 @@
 package bg.tuvarna.devicebackend.repository;
 
 import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
+import bg.tuvarna.devicebackend.models.dtos.DeviceListing;
 import bg.tuvarna.devicebackend.models.entities.Device;
 import bg.tuvarna.devicebackend.models.entities.Passport;
 import bg.tuvarna.devicebackend.models.entities.Renovation;
@@ -16,6 +17,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
@@ -149,4 +151,90 @@ public class DeviceRepoTests {
                 )
         );
     }
+
+    @Test
+    void devicesFindAllAfterCursorOrderedBySerialNumber() {
+        List<Device> firstPage = deviceRepository.findAllAfter("First", "", Limit.of(1));
+        List<Device> secondPage = deviceRepository.findAllAfter("First", firstPage.get(0).getSerialNumber(), Limit.of(10));
+
+        assertAll(
+                () -> assertEquals("First1", firstPage.get(0).getSerialNumber()),
+                () -> assertEquals(1, secondPage.size()),
+                () -> assertEquals("First3", secondPage.get(0).getSerialNumber()),
+                () -> assertEquals(2, deviceRepository.countAll("First"))
+        );
+    }
+
+    @Test
+    void devicesFindAllAfterPassportRenameAndSearchDocumentRefresh() {
+        Passport passport = passportRepository.findAll().stream()
+                .filter(p -> "FirstPassport".equals(p.getName()))
+                .findFirst()
+                .orElseThrow();
+        passport.setName("RenamedPassport");
+        passportRepository.save(passport);
+
+        int refreshed = deviceRepository.refreshSearchDocumentsByPassport(passport.getId());
+        Page<Device> devicePage = deviceRepository.findAll("renamedpassport", PageRequest.of(0, 10));
+
+        assertAll(
+                () -> assertEquals(2, refreshed),
+                () -> assertEquals(2, devicePage.getTotalElements())
+        );
+    }
+
+    @Test
+    void deviceListingsSelectPassportAndOwnerWithoutLoadingEntities() {
+        Page<DeviceListing> listingPage = deviceRepository.searchListings("FirstPassport", PageRequest.of(0, 10));
+        Long ownerId = userRepository.getByEmail("petralewis@gmail.com").getId();
+
+        assertAll(
+                () -> assertEquals(2, listingPage.getTotalElements()),
+                () -> assertTrue(listingPage.stream().allMatch(d -> "FirstPassport".equals(d.passport().name()))),
+                () -> assertEquals(
+                        List.of("First3"),
+                        deviceRepository.findListingsByUserIds(List.of(ownerId)).stream().map(DeviceListing::serialNumber).toList()
+                )
+        );
+    }
+
+    @Test
+    void latestRenovationsAreFoundBySerialNumbers() {
+        saveRenovation("First3", "Screen", LocalDate.of(2024, 1, 1));
+        saveRenovation("First3", "Battery", LocalDate.of(2024, 6, 1));
+
+        List<RenovationRepository.LatestRenovationRow> rows =
+                renovationRepository.findLatestBySerialNumbers(List.of("First1", "First3"));
+
+        assertAll(
+                () -> assertEquals(1, rows.size()),
+                () -> assertEquals("First3", rows.get(0).getSerialNumber()),
+                () -> assertEquals(3, rows.get(0).getRenovationCount()),
+                () -> assertEquals("Battery", rows.get(0).getDescription())
+        );
+    }
+
+    @Test
+    void renovationHistoryIsFilteredByDateRange() {
+        saveRenovation("First3", "Screen", LocalDate.of(2024, 1, 1));
+        saveRenovation("First3", "Battery", LocalDate.of(2024, 6, 1));
+        saveRenovation("First3", "Keyboard", LocalDate.of(2024, 3, 1));
+
+        Page<Renovation> history = renovationRepository.findHistory(
+                "First3", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 3, 31), PageRequest.of(0, 1)
+        );
+
+        assertAll(
+                () -> assertEquals(2, history.getTotalElements()),
+                () -> assertEquals("Keyboard", history.getContent().get(0).getDescription())
+        );
+    }
+
+    private void saveRenovation(String serialNumber, String description, LocalDate renovationDate) {
+        Renovation renovation = new Renovation();
+        renovation.setDevice(deviceRepository.findById(serialNumber).orElseThrow());
+        renovation.setDescription(description);
+        renovation.setRenovationDate(renovationDate);
+        renovationRepository.save(renovation);
+    }
 }
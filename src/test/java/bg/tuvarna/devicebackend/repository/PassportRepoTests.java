@@ -79,6 +79,19 @@ public class PassportRepoTests {
         );
     }
 
+    @Test
+    void passportsFindAllByFromSerialNumberBetweenDetectsContainment() {
+        List<Passport> contained = passportRepository.findByFromSerialNumberBetween("Test", 10, 20);
+        List<Passport> containing = passportRepository.findByFromSerialNumberBetween("Another", 1, 500);
+
+        assertAll(
+                () -> assertEquals(1, contained.size()),
+                () -> assertEquals("FirstPassport", contained.get(0).getName()),
+                () -> assertEquals(1, containing.size()),
+                () -> assertEquals("ThirdPassport", containing.get(0).getName())
+        );
+    }
+
     @Test
     void passportsFindAllBySerial() {
         List<Passport> passports = passportRepository.findByFromSerial("Test123");
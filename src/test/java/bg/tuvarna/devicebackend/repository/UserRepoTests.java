@@ -3,16 +3,21 @@ package bg.tuvarna.devicebackend.repository;
 import bg.tuvarna.devicebackend.models.entities.User;
 import bg.tuvarna.devicebackend.models.enums.UserRole;
 import bg.tuvarna.devicebackend.repositories.UserRepository;
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @DataJpaTest
@@ -20,6 +25,8 @@ import static org.junit.jupiter.api.Assertions.*;
 class UserRepoTests {
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private TestEntityManager entityManager;
 
     @BeforeEach
     void setUp() {
@@ -68,4 +75,34 @@ class UserRepoTests {
                 )
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void getAllUsersAfterCursorWithoutAdmins() {
+        List<User> firstPage = userRepository.getAllUsersAfter(0L, Limit.of(1));
+        List<User> secondPage = userRepository.getAllUsersAfter(firstPage.get(0).getId(), Limit.of(10));
+
+        assertAll(
+                () -> assertEquals("mosho", firstPage.get(0).getFullName()),
+                () -> assertEquals(1, secondPage.size()),
+                () -> assertEquals("gosho", secondPage.get(0).getFullName()),
+                () -> assertEquals(2, userRepository.countSearchBy(null))
+        );
+    }
+
+    @Test
+    void devicesAreLoadedOnlyByTheDevicesFetchPlan() {
+        Long id = userRepository.getByPhone("0888123456").getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        User principal = userRepository.findById(id).orElseThrow();
+        entityManager.clear();
+        User withDevices = userRepository.findWithDevicesById(id).orElseThrow();
+
+        assertAll(
+                () -> assertFalse(Hibernate.isInitialized(principal.getDevices())),
+                () -> assertTrue(Hibernate.isInitialized(withDevices.getDevices())),
+                () -> assertTrue(withDevices.getDevices().isEmpty())
+        );
+    }
+}
@@ -0,0 +1,75 @@
+package bg.tuvarna.devicebackend.service;
+
+import bg.tuvarna.devicebackend.config.BoundedPasswordEncoder;
+import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
+import bg.tuvarna.devicebackend.controllers.exceptions.ErrorCode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedPasswordEncoderTests {
+    @Test
+    public void hashesOnTheBoundedExecutor() {
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(4), 1, 1, new SimpleMeterRegistry());
+
+        String encoded = encoder.encode("Password1!");
+
+        assertAll(
+                () -> assertTrue(encoder.matches("Password1!", encoded)),
+                () -> assertFalse(encoder.matches("Password2!", encoded)),
+                () -> assertTrue(new BoundedPasswordEncoder(new BCryptPasswordEncoder(5), 1, 1, new SimpleMeterRegistry()).upgradeEncoding(encoded))
+        );
+        encoder.destroy();
+    }
+
+    @Test
+    public void rejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(blockingEncoder(started, release), 1, 1, new SimpleMeterRegistry());
+
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> encoder.encode("first"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> encoder.encode("second"));
+        CompletableFuture<String> third = CompletableFuture.supplyAsync(() -> encoder.encode("third"));
+        CompletableFuture<?> rejected = CompletableFuture.anyOf(second, third).handle((result, e) -> e);
+        Throwable rejection = rejected.get(5, TimeUnit.SECONDS) instanceof Throwable t ? t.getCause() : null;
+        release.countDown();
+
+        assertAll(
+                () -> assertInstanceOf(CustomException.class, rejection),
+                () -> assertEquals(ErrorCode.TooManyRequests, ((CustomException) rejection).getErrorCode()),
+                () -> assertEquals("first", running.get(5, TimeUnit.SECONDS)),
+                () -> assertEquals(1, (second.isCompletedExceptionally() ? 0 : 1) + (third.isCompletedExceptionally() ? 0 : 1))
+        );
+        encoder.destroy();
+    }
+
+    private static PasswordEncoder blockingEncoder(CountDownLatch started, CountDownLatch release) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return rawPassword.toString().equals(encodedPassword);
+            }
+        };
+    }
+}
@@ -4,6 +4,7 @@ import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
 import bg.tuvarna.devicebackend.models.dtos.PassportUpdateVO;
 import bg.tuvarna.devicebackend.models.entities.Passport;
 import bg.tuvarna.devicebackend.repositories.PassportRepository;
+import bg.tuvarna.devicebackend.services.PassportSerialIndex;
 import bg.tuvarna.devicebackend.services.PassportService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -18,6 +19,10 @@ import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
@@ -29,6 +34,9 @@ public class PassportServiceTests {
     @Autowired
     private PassportService passportService;
 
+    @Autowired
+    private PassportSerialIndex passportSerialIndex;
+
     @Test
     public void findPassportBySerialIdThrowsPassportNotFoundException() {
         when(passportRepository.findByFromSerial("1234")).thenReturn(new ArrayList<Passport>());
@@ -41,6 +49,34 @@ public class PassportServiceTests {
         assertEquals("Passport not found for serial number: 1234", ex.getMessage());
     }
 
+    @Test
+    public void findPassportBySerialIdResolvesLongestPrefixFromIndex() {
+        passportSerialIndex.invalidate();
+
+        when(passportRepository.findAll()).thenReturn(List.of(
+                Passport.builder().id(1L).name("Short").serialPrefix("AB").fromSerialNumber(1).toSerialNumber(1000).build(),
+                Passport.builder().id(2L).name("Long").serialPrefix("ABC").fromSerialNumber(1).toSerialNumber(100).build()
+        ));
+
+        assertEquals("Long", passportService.findPassportBySerialId("ABC42").getName());
+        assertEquals("Short", passportService.findPassportBySerialId("AB420").getName());
+        verify(passportRepository, never()).findByFromSerial(anyString());
+    }
+
+    @Test
+    public void findPassportByIdIsCachedUntilDeleted() {
+        when(passportRepository.findById(5L)).thenReturn(Optional.of(
+                Passport.builder().id(5L).name("Cached").serialPrefix("CA").fromSerialNumber(1).toSerialNumber(10).build()
+        ));
+
+        passportService.findPassportById(5L);
+        passportService.findPassportById(5L);
+        passportService.delete(5L);
+        passportService.findPassportById(5L);
+
+        verify(passportRepository, times(2)).findById(5L);
+    }
+
     @Test
     public void updateThrowsPassportNotFound() {
         when(passportRepository.findById(1234L)).thenReturn(Optional.empty());
@@ -0,0 +1,105 @@
+package bg.tuvarna.devicebackend.service;
+
+import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
+import bg.tuvarna.devicebackend.services.RenovationLogWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RenovationLogWriterTests {
+    @Test
+    public void rejectsAppendsStillQueuedWhenStopped() throws Exception {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            flushing.countDown();
+            awaitUninterruptibly(release);
+            return List.of(1L);
+        });
+        RenovationLogWriter writer = writer(transactionTemplate, Duration.ofMinutes(1));
+        writer.start();
+
+        CompletableFuture<Long> flushed = writer.append("Serial1", "Renovation", LocalDate.now());
+        assertTrue(flushing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Long> queued = writer.append("Serial2", "Renovation", LocalDate.now());
+        writer.stop();
+
+        CompletionException e = assertThrows(CompletionException.class, () -> queued.getNow(null));
+        release.countDown();
+
+        assertAll(
+                () -> assertInstanceOf(CustomException.class, e.getCause()),
+                () -> assertEquals(1L, flushed.get(5, TimeUnit.SECONDS))
+        );
+    }
+
+    @Test
+    public void rejectsAppendsAfterStop() throws Exception {
+        RenovationLogWriter writer = writer(mock(TransactionTemplate.class), Duration.ofMinutes(1));
+        writer.start();
+        writer.stop();
+
+        ExecutionException e = assertThrows(
+                ExecutionException.class,
+                () -> writer.append("Serial1", "Renovation", LocalDate.now()).get(1, TimeUnit.SECONDS)
+        );
+
+        assertInstanceOf(CustomException.class, e.getCause());
+    }
+
+    @Test
+    public void timesOutWhenTheWriterDoesNotComplete() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            release.await();
+            return List.of(1L);
+        });
+        RenovationLogWriter writer = writer(transactionTemplate, Duration.ofMillis(100));
+        writer.start();
+
+        ExecutionException e = assertThrows(
+                ExecutionException.class,
+                () -> writer.append("Serial1", "Renovation", LocalDate.now()).get(5, TimeUnit.SECONDS)
+        );
+
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        release.countDown();
+        writer.stop();
+    }
+
+    private static RenovationLogWriter writer(TransactionTemplate transactionTemplate, Duration appendTimeout) {
+        return new RenovationLogWriter(
+                mock(JdbcTemplate.class), transactionTemplate, new SimpleMeterRegistry(),
+                200, Duration.ofMillis(20), 10000, appendTimeout
+        );
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException ignored) {
+                // stop() interrupts the writer; keep it stuck in the flush until released.
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package bg.tuvarna.devicebackend.service;
 
+import bg.tuvarna.devicebackend.config.JwtService;
 import bg.tuvarna.devicebackend.controllers.exceptions.CustomException;
+import bg.tuvarna.devicebackend.models.dtos.ChangePasswordVO;
 import bg.tuvarna.devicebackend.models.dtos.UserCreateVO;
 import bg.tuvarna.devicebackend.models.dtos.UserUpdateVO;
 import bg.tuvarna.devicebackend.models.entities.User;
@@ -8,7 +10,7 @@ import bg.tuvarna.devicebackend.models.enums.UserRole;
 import bg.tuvarna.devicebackend.repositories.UserRepository;
 import bg.tuvarna.devicebackend.services.DeviceService;
 import bg.tuvarna.devicebackend.services.UserService;
-
+import io.jsonwebtoken.Claims;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -19,8 +21,7 @@ import org.springframework.test.context.ActiveProfiles;
 import java.time.LocalDate;
 import java.util.Optional;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
@@ -34,6 +35,8 @@ public class UserServiceTests {
     private DeviceService deviceService;
     @Autowired
     private UserService userService;
+    @Autowired
+    private JwtService jwtService;
 
     @Test
     public void updateAdminUserPasswordShouldThrowException() {
@@ -115,4 +118,27 @@ public class UserServiceTests {
 
         assertEquals("Phone already taken", ex.getMessage());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void passwordChangeRevokesIssuedTokens() {
+        User user = User.builder().id(7L).role(UserRole.USER).password("old-hash").build();
+        when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+        when(userRepository.findPasswordById(7L)).thenReturn(Optional.of("old-hash"));
+        when(passwordEncoder.matches("old", "old-hash")).thenReturn(true);
+        when(passwordEncoder.encode("new")).thenReturn("new-hash");
+
+        Claims claims = jwtService.parseToken(jwtService.generateToken(user));
+        String fingerprint = claims.get(JwtService.CREDENTIALS_CLAIM, String.class);
+        String beforeChange = userService.getCredentialsFingerprint(7L);
+
+        userService.updatePassword(7L, new ChangePasswordVO("old", "new"));
+        when(userRepository.findPasswordById(7L)).thenReturn(Optional.of("new-hash"));
+
+        assertAll(
+                () -> assertEquals(fingerprint, beforeChange),
+                () -> assertEquals(7L, jwtService.toPrincipal(claims).getId()),
+                () -> assertEquals(UserRole.USER, jwtService.toPrincipal(claims).getRole()),
+                () -> assertNotEquals(fingerprint, userService.getCredentialsFingerprint(7L))
+        );
+    }
+}
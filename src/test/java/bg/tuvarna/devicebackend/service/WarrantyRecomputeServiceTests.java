@@ -0,0 +1,164 @@
+package bg.tuvarna.devicebackend.service;
+
+import bg.tuvarna.devicebackend.models.dtos.PassportUpdateVO;
+import bg.tuvarna.devicebackend.models.dtos.WarrantyRecomputeVO;
+import bg.tuvarna.devicebackend.models.entities.Device;
+import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.models.entities.User;
+import bg.tuvarna.devicebackend.models.enums.UserRole;
+import bg.tuvarna.devicebackend.models.enums.WarrantyRecomputeStatus;
+import bg.tuvarna.devicebackend.repositories.DeviceRepository;
+import bg.tuvarna.devicebackend.repositories.PassportRepository;
+import bg.tuvarna.devicebackend.repositories.UserRepository;
+import bg.tuvarna.devicebackend.services.PassportService;
+import bg.tuvarna.devicebackend.services.WarrantyRecomputeService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = "passports.warranty-recompute.chunk-size=2")
+public class WarrantyRecomputeServiceTests {
+    private static final LocalDate PURCHASED = LocalDate.of(2024, 1, 31);
+
+    @Autowired
+    private PassportService passportService;
+    @Autowired
+    private WarrantyRecomputeService warrantyRecomputeService;
+    @Autowired
+    private PassportRepository passportRepository;
+    @Autowired
+    private DeviceRepository deviceRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @SpyBean
+    private TransactionTemplate transactionTemplate;
+
+    private Passport passport;
+
+    @BeforeEach
+    void setUp() {
+        passport = passportRepository.save(Passport.builder()
+                .name("Recomputed")
+                .model("Model")
+                .serialPrefix("WR")
+                .fromSerialNumber(1)
+                .toSerialNumber(100)
+                .warrantyMonths(24)
+                .build());
+
+        User owner = userRepository.save(User.builder()
+                .fullName("Warranty Owner")
+                .phone("0888000111")
+                .email("warranty.owner@gmail.com")
+                .role(UserRole.USER)
+                .build());
+
+        for (int i = 1; i <= 5; i++) {
+            Device device = new Device();
+            device.setSerialNumber("WR" + i);
+            device.setPassport(passport);
+            device.setUser(i % 2 == 0 ? owner : null);
+            device.setPurchaseDate(PURCHASED);
+            device.setWarrantyExpirationDate(PURCHASED.plusMonths(i % 2 == 0 ? 36 : 24));
+            deviceRepository.save(device);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        deviceRepository.deleteAll();
+        userRepository.deleteAll();
+        passportRepository.deleteAll();
+    }
+
+    @Test
+    void changingWarrantyMonthsRecomputesEveryDevice() throws InterruptedException {
+        passportService.update(passport.getId(), new PassportUpdateVO(null, null, null, 6, null, null));
+
+        WarrantyRecomputeVO progress = awaitFinished(passport.getId());
+
+        assertAll(
+                () -> assertEquals(WarrantyRecomputeStatus.COMPLETED, progress.status()),
+                () -> assertEquals(5, progress.total()),
+                () -> assertEquals(5, progress.processed()),
+                () -> assertEquals(5, progress.updated()),
+                () -> assertEquals(LocalDate.of(2024, 7, 31), deviceRepository.findById("WR1").orElseThrow().getWarrantyExpirationDate()),
+                () -> assertEquals(LocalDate.of(2025, 7, 31), deviceRepository.findById("WR2").orElseThrow().getWarrantyExpirationDate())
+        );
+    }
+
+    @Test
+    void recomputingUnchangedWarrantiesWritesNothing() throws InterruptedException {
+        passportService.recomputeWarranties(passport.getId());
+
+        WarrantyRecomputeVO progress = awaitFinished(passport.getId());
+
+        assertAll(
+                () -> assertEquals(WarrantyRecomputeStatus.COMPLETED, progress.status()),
+                () -> assertEquals(5, progress.processed()),
+                () -> assertEquals(0, progress.updated())
+        );
+    }
+
+    @Test
+    void devicesChangedWhileTheirChunkIsWrittenAreRecomputedFromTheirNewState() throws InterruptedException {
+        AtomicBoolean edited = new AtomicBoolean();
+        doAnswer(invocation -> {
+            if (Thread.currentThread().getName().equals("warranty-recompute") && edited.compareAndSet(false, true)) {
+                jdbcTemplate.update(
+                        "update devices set purchase_date = ?, version = version + 1 where serial_number = 'WR1'",
+                        Date.valueOf(LocalDate.of(2024, 3, 31))
+                );
+            }
+            return invocation.callRealMethod();
+        }).when(transactionTemplate).execute(any());
+        double conflicts = meterRegistry.counter("passports.warranty.recompute.conflicts").count();
+
+        passportService.update(passport.getId(), new PassportUpdateVO(null, null, null, 6, null, null));
+
+        WarrantyRecomputeVO progress = awaitFinished(passport.getId());
+
+        assertAll(
+                () -> assertEquals(WarrantyRecomputeStatus.COMPLETED, progress.status()),
+                () -> assertEquals(5, progress.updated()),
+                () -> assertEquals(conflicts + 1, meterRegistry.counter("passports.warranty.recompute.conflicts").count()),
+                () -> assertEquals(LocalDate.of(2024, 9, 30), deviceRepository.findById("WR1").orElseThrow().getWarrantyExpirationDate()),
+                () -> assertEquals(LocalDate.of(2024, 7, 31), deviceRepository.findById("WR3").orElseThrow().getWarrantyExpirationDate())
+        );
+    }
+
+    private WarrantyRecomputeVO awaitFinished(Long passportId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            WarrantyRecomputeVO progress = warrantyRecomputeService.progress(passportId);
+            if (progress.finishedAt() != null) {
+                return progress;
+            }
+            Thread.sleep(50);
+        }
+
+        return warrantyRecomputeService.progress(passportId);
+    }
+}
@@ -0,0 +1,141 @@
+package bg.tuvarna.devicebackend.service;
+
+import bg.tuvarna.devicebackend.models.dtos.DeviceCreateVO;
+import bg.tuvarna.devicebackend.models.dtos.DeviceUpdateVO;
+import bg.tuvarna.devicebackend.models.entities.Device;
+import bg.tuvarna.devicebackend.models.entities.Passport;
+import bg.tuvarna.devicebackend.models.entities.WarrantyScanCheckpoint;
+import bg.tuvarna.devicebackend.models.events.WarrantyExpiringEvent;
+import bg.tuvarna.devicebackend.repositories.DeviceRepository;
+import bg.tuvarna.devicebackend.repositories.PassportRepository;
+import bg.tuvarna.devicebackend.repositories.WarrantyScanCheckpointRepository;
+import bg.tuvarna.devicebackend.services.DeviceService;
+import bg.tuvarna.devicebackend.services.WarrantyNotificationListener;
+import bg.tuvarna.devicebackend.services.WarrantyScanService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = {"warranty.scan.batch-size=2", "warranty.scan.partitions=3"})
+public class WarrantyScanServiceTests {
+    // Writers queue only expirations inside the window that starts today, so the scans run on the real date.
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @MockBean
+    private WarrantyNotificationListener listener;
+    @Autowired
+    private WarrantyScanService warrantyScanService;
+    @Autowired
+    private WarrantyScanCheckpointRepository checkpointRepository;
+    @Autowired
+    private DeviceRepository deviceRepository;
+    @Autowired
+    private PassportRepository passportRepository;
+    @Autowired
+    private DeviceService deviceService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        Passport passport = passportRepository.save(Passport.builder()
+                .name("Scanned")
+                .model("Model")
+                .serialPrefix("WS")
+                .fromSerialNumber(1)
+                .toSerialNumber(100)
+                .warrantyMonths(12)
+                .build());
+
+        int[] expiresInDays = {-1, 0, 3, 3, 10, 17, 30, 31};
+        for (int i = 0; i < expiresInDays.length; i++) {
+            Device device = new Device();
+            device.setSerialNumber("WS" + (i + 1));
+            device.setPassport(passport);
+            device.setPurchaseDate(TODAY.minusYears(1));
+            device.setWarrantyExpirationDate(TODAY.plusDays(expiresInDays[i]));
+            deviceRepository.save(device);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from warranty_scan_queue");
+        checkpointRepository.deleteAll();
+        deviceRepository.deleteAll();
+        passportRepository.deleteAll();
+    }
+
+    @Test
+    void scanNotifiesDevicesInsideTheWindowOnce() {
+        long notified = warrantyScanService.scan(TODAY);
+        long notifiedAgain = warrantyScanService.scan(TODAY);
+        long notifiedNextDay = warrantyScanService.scan(TODAY.plusDays(1));
+
+        ArgumentCaptor<WarrantyExpiringEvent> events = ArgumentCaptor.forClass(WarrantyExpiringEvent.class);
+        verify(listener, atLeastOnce()).onWarrantyExpiring(events.capture());
+
+        assertAll(
+                () -> assertEquals(6, notified),
+                () -> assertEquals(0, notifiedAgain),
+                () -> assertEquals(1, notifiedNextDay),
+                () -> assertEquals(
+                        List.of("WS2", "WS3", "WS4", "WS5", "WS6", "WS7", "WS8"),
+                        events.getAllValues().stream().map(WarrantyExpiringEvent::serialNumber).sorted().toList()
+                ),
+                () -> assertTrue(checkpointRepository.findByCompletedFalseOrderBySliceFrom().isEmpty())
+        );
+    }
+
+    @Test
+    void scanResumesAnInterruptedSliceFromItsCheckpoint() {
+        WarrantyScanCheckpoint interrupted = new WarrantyScanCheckpoint(TODAY, TODAY.plusDays(30));
+        interrupted.setLastExpirationDate(TODAY.plusDays(3));
+        interrupted.setLastSerialNumber("WS3");
+        checkpointRepository.save(interrupted);
+
+        long notified = warrantyScanService.scan(TODAY);
+
+        assertEquals(4, notified);
+    }
+
+    @Test
+    void scanNotifiesDevicesWhoseExpirationMovedIntoAnAlreadyScannedRange() {
+        warrantyScanService.scan(TODAY);
+        deviceService.updateDevice("WS1", new DeviceUpdateVO(TODAY.plusDays(5).minusMonths(12), null), null);
+        deviceService.addAnonymousDevice(new DeviceCreateVO("WS9", TODAY.plusDays(2).minusMonths(12)));
+
+        long notified = warrantyScanService.scan(TODAY.plusDays(1));
+        long notifiedAgain = warrantyScanService.scan(TODAY.plusDays(1));
+
+        ArgumentCaptor<WarrantyExpiringEvent> events = ArgumentCaptor.forClass(WarrantyExpiringEvent.class);
+        verify(listener, atLeastOnce()).onWarrantyExpiring(events.capture());
+
+        assertAll(
+                () -> assertEquals(3, notified),
+                () -> assertEquals(0, notifiedAgain),
+                () -> assertEquals(
+                        List.of("WS1", "WS8", "WS9"),
+                        events.getAllValues().subList(6, 9).stream().map(WarrantyExpiringEvent::serialNumber).sorted().toList()
+                )
+        );
+    }
+}
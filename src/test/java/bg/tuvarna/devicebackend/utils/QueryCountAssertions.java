@@ -0,0 +1,27 @@
+package bg.tuvarna.devicebackend.utils;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pins the number of SQL statements an action executes, so an endpoint that regresses into an N+1 select fails its test.
+ */
+public final class QueryCountAssertions {
+    private QueryCountAssertions() {
+    }
+
+    public static <T> T assertStatementCount(int expected, Callable<T> action) throws Exception {
+        try (QueryStats stats = QueryStats.open()) {
+            T result = action.call();
+            Map.Entry<String, Integer> repeated = stats.mostRepeated();
+            assertEquals(
+                    expected,
+                    stats.statements(),
+                    () -> "Unexpected number of SQL statements, most repeated: " + repeated
+            );
+            return result;
+        }
+    }
+}